@@ -0,0 +1,5 @@
+package com.pancakeswap.nft.publish.config;
+
+public enum Downstream {
+    IPFS, S3, MONGO
+}
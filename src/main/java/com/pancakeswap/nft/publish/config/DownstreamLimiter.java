@@ -0,0 +1,42 @@
+package com.pancakeswap.nft.publish.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+
+// Caps the total concurrency towards each downstream across all listing jobs.
+// Node calls are capped by node.batch.max.in.flight in the batcher.
+@Component
+public class DownstreamLimiter {
+
+    @Value("${nft.downstream.ipfs.max.concurrency:32}")
+    private Integer ipfsMaxConcurrency;
+    @Value("${nft.downstream.s3.max.concurrency:16}")
+    private Integer s3MaxConcurrency;
+    @Value("${nft.downstream.mongo.max.concurrency:8}")
+    private Integer mongoMaxConcurrency;
+
+    private final Map<Downstream, Semaphore> permits = new EnumMap<>(Downstream.class);
+
+    @PostConstruct
+    public void init() {
+        permits.put(Downstream.IPFS, new Semaphore(ipfsMaxConcurrency));
+        permits.put(Downstream.S3, new Semaphore(s3MaxConcurrency));
+        permits.put(Downstream.MONGO, new Semaphore(mongoMaxConcurrency));
+    }
+
+    public Permit acquire(Downstream downstream) {
+        Semaphore semaphore = permits.get(downstream);
+        semaphore.acquireUninterruptibly();
+        return semaphore::release;
+    }
+
+    public interface Permit extends AutoCloseable {
+        @Override
+        void close();
+    }
+}
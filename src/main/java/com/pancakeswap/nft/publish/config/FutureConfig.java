@@ -1,39 +1,154 @@
 package com.pancakeswap.nft.publish.config;
 
+import com.pancakeswap.nft.publish.exception.ListingException;
 import lombok.Getter;
 
-import java.util.Collections;
-import java.util.Deque;
-import java.util.HashSet;
-import java.util.Set;
+import java.util.*;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
 
 @Getter
 public class FutureConfig {
-    private final ExecutorService executor;
-    private final Deque<CompletableFuture<?>> futureRequests;
-    private final Set<String> tokenIdsFailed;
+    private static final ThreadLocal<ListingStage> CURRENT_STAGE = new ThreadLocal<>();
 
-    private FutureConfig(Deque<CompletableFuture<?>> futureRequests, Set<String> tokenIdsFailed) {
-        executor = Executors.newFixedThreadPool(15);
+    private final Map<ListingStage, Executor> executors;
+    private final Map<ListingStage, Semaphore> slots;
+    private final StageMetrics stageMetrics;
+    // tasks submitted and not finished yet, a task always submits its follow-ups before it finishes
+    private final AtomicInteger inFlight = new AtomicInteger();
+    // tasks dropped by a stage shut down before they ran
+    private final AtomicInteger abandoned = new AtomicInteger();
+    private final Object completionLock = new Object();
 
-        this.futureRequests = futureRequests;
-        this.tokenIdsFailed = tokenIdsFailed;
+    private final Set<String> tokenIdsFailed = Collections.synchronizedSet(new HashSet<>());
+
+    FutureConfig(Map<ListingStage, Executor> executors, Map<ListingStage, Semaphore> slots, StageMetrics stageMetrics) {
+        this.executors = executors;
+        this.slots = slots;
+        this.stageMetrics = stageMetrics;
+    }
+
+    /**
+     * Runs the task on the stage pool. Blocks the caller while the stage is full, so backpressure
+     * flows upstream. Re-submissions from the same stage (retries) never block.
+     */
+    public void addFuture(ListingStage stage, Runnable runnable) {
+        inFlight.incrementAndGet();
+        StageTask task = new StageTask(stage, acquireSlot(stage), System.nanoTime(), runnable);
+        try {
+            executors.get(stage).execute(task);
+        } catch (RejectedExecutionException e) {
+            task.abandon();
+            throw e;
+        }
     }
 
-    public void removeIfDone() {
-        this.futureRequests.removeIf(CompletableFuture::isDone);
+    /**
+     * Starts an async call holding a stage slot until it completes, the callback runs on the stage pool.
+     */
+    public <T> void addFuture(ListingStage stage, Supplier<CompletableFuture<T>> call, BiConsumer<T, Throwable> callback) {
+        inFlight.incrementAndGet();
+        boolean acquired = acquireSlot(stage);
+        long submitted = System.nanoTime();
+        CompletableFuture<T> future;
+        try {
+            future = call.get();
+        } catch (Exception e) {
+            future = CompletableFuture.failedFuture(e);
+        }
+        future.whenComplete((res, ex) -> {
+            StageTask task = new StageTask(stage, acquired, submitted, () -> callback.accept(res, ex));
+            try {
+                executors.get(stage).execute(task);
+            } catch (RejectedExecutionException e) {
+                task.abandon();
+            }
+        });
     }
 
-    public void addFuture(Runnable runnable) {
-        this.futureRequests.offerLast(CompletableFuture.runAsync(runnable, executor));
+    /**
+     * Blocks until every submitted task, including the ones submitted by other tasks, has finished.
+     *
+     * @throws ListingException when interrupted, the job is still running then, or when a stage shut down
+     *                          dropped some of the tasks
+     */
+    public void awaitCompletion() {
+        synchronized (completionLock) {
+            while (inFlight.get() > 0) {
+                try {
+                    completionLock.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new ListingException("Interrupted while waiting for the listing job to complete");
+                }
+            }
+        }
+        if (abandoned.get() > 0) {
+            throw new ListingException(String.format("Listing job stopped, %d tasks were dropped by the executor shutdown", abandoned.get()));
+        }
     }
 
     public void addFailedTokenId(String id) {
         this.tokenIdsFailed.add(id);
     }
 
-    public static FutureConfig init() {
-        return new FutureConfig(new ConcurrentLinkedDeque<>(), Collections.synchronizedSet(new HashSet<>()));
+    private boolean acquireSlot(ListingStage stage) {
+        if (CURRENT_STAGE.get() == stage) {
+            return false;
+        }
+        slots.get(stage).acquireUninterruptibly();
+        return true;
+    }
+
+    private void releaseSlot(ListingStage stage, boolean acquired) {
+        if (acquired) {
+            slots.get(stage).release();
+        }
+    }
+
+    private void finished() {
+        if (inFlight.decrementAndGet() == 0) {
+            synchronized (completionLock) {
+                completionLock.notifyAll();
+            }
+        }
+    }
+
+    // Task of the job on a stage pool, either run or abandon accounts for it
+    private class StageTask implements StageExecutor.Task {
+        private final ListingStage stage;
+        private final boolean acquired;
+        private final long submitted;
+        private final Runnable runnable;
+
+        StageTask(ListingStage stage, boolean acquired, long submitted, Runnable runnable) {
+            this.stage = stage;
+            this.acquired = acquired;
+            this.submitted = submitted;
+            this.runnable = runnable;
+        }
+
+        @Override
+        public void run() {
+            CURRENT_STAGE.set(stage);
+            long started = System.nanoTime();
+            try {
+                runnable.run();
+            } finally {
+                stageMetrics.record(stage.metricName(), started - submitted, System.nanoTime() - started);
+                CURRENT_STAGE.remove();
+                releaseSlot(stage, acquired);
+                finished();
+            }
+        }
+
+        @Override
+        public void abandon() {
+            abandoned.incrementAndGet();
+            releaseSlot(stage, acquired);
+            finished();
+        }
     }
 }
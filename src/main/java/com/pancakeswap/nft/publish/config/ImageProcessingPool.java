@@ -0,0 +1,96 @@
+package com.pancakeswap.nft.publish.config;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// CPU bound image work (decode, resize, encode), sized to the cores and kept apart from the I/O bound stages.
+// Submitters block while the queue is full, so downloads can't run ahead of processing.
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class ImageProcessingPool {
+
+    public static final String STAGE = "image-processing";
+
+    private final StageMetrics stageMetrics;
+
+    // 0 means one worker per available core
+    @Value("${nft.image.processing.concurrency:0}")
+    private Integer concurrency;
+    @Value("${nft.image.processing.queue.size:32}")
+    private Integer queueSize;
+
+    private ThreadPoolExecutor workers;
+
+    @PostConstruct
+    public void init() {
+        int threads = concurrency > 0 ? concurrency : Runtime.getRuntime().availableProcessors();
+        AtomicInteger counter = new AtomicInteger();
+        workers = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(queueSize), r -> {
+            Thread thread = new Thread(r, STAGE + "-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }, (task, executor) -> {
+            if (executor.isShutdown()) {
+                throw new RejectedExecutionException("Image processing pool is shut down");
+            }
+            try {
+                executor.getQueue().put(task);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RejectedExecutionException("Interrupted while waiting for image processing queue", e);
+            }
+            // shut down while waiting, nothing drains the queue anymore
+            if (executor.isShutdown() && executor.getQueue().remove(task)) {
+                throw new RejectedExecutionException("Image processing pool is shut down");
+            }
+        });
+        stageMetrics.register(STAGE, () -> workers.getQueue().size());
+        log.info("Image processing pool started with {} workers", threads);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        // queued tasks never run, their submitters stop waiting
+        workers.shutdownNow().forEach(task -> ((Future<?>) task).cancel(false));
+    }
+
+    public <T> T process(Callable<T> task) throws IOException {
+        long submitted = System.nanoTime();
+        Future<T> result = workers.submit(() -> {
+            long started = System.nanoTime();
+            try {
+                return task.call();
+            } finally {
+                stageMetrics.record(STAGE, started - submitted, System.nanoTime() - started);
+            }
+        });
+        try {
+            return result.get();
+        } catch (InterruptedException e) {
+            result.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while processing image");
+        } catch (CancellationException e) {
+            throw new IOException("Image processing pool is shut down", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException io) {
+                throw io;
+            }
+            if (cause instanceof RuntimeException runtime) {
+                throw runtime;
+            }
+            throw new IOException(cause);
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package com.pancakeswap.nft.publish.config;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class ListingExecutor {
+
+    private final Environment environment;
+    private final StageMetrics stageMetrics;
+
+    // max part of a stage's workers a single job can hold, the rest is left to other jobs
+    @Value("${nft.listing.job.max.share:0.5}")
+    private Double jobMaxShare;
+    @Value("${nft.listing.shutdown.timeout:30}")
+    private Long shutdownTimeout;
+
+    private final Map<ListingStage, StageExecutor> stages = new EnumMap<>(ListingStage.class);
+
+    @PostConstruct
+    public void init() {
+        for (ListingStage stage : ListingStage.values()) {
+            String prefix = String.format("listing-%s-", stage.name().toLowerCase(Locale.ROOT));
+            stages.put(stage, new StageExecutor(stage,
+                    stageProperty(stage, "concurrency", stage.getConcurrency()), platformThreadFactory(prefix)));
+        }
+        stages.forEach((stage, executor) -> stageMetrics.register(stage.metricName(), executor::getQueued));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        for (StageExecutor executor : stages.values()) {
+            try {
+                executor.shutdown(shutdownTimeout, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    public FutureConfig newJob() {
+        Map<ListingStage, Executor> executors = new EnumMap<>(ListingStage.class);
+        Map<ListingStage, Semaphore> slots = new EnumMap<>(ListingStage.class);
+        for (ListingStage stage : ListingStage.values()) {
+            StageExecutor executor = stages.get(stage);
+            StageExecutor.JobQueue queue = executor.newJobQueue((int) Math.ceil(executor.getConcurrency() * jobMaxShare));
+            executors.put(stage, task -> executor.submit(queue, task));
+            slots.put(stage, new Semaphore(executor.getConcurrency() + stageProperty(stage, "queue.size", stage.getQueueSize())));
+        }
+        return new FutureConfig(executors, slots, stageMetrics);
+    }
+
+    private static ThreadFactory platformThreadFactory(String prefix) {
+        AtomicInteger counter = new AtomicInteger();
+        return r -> {
+            Thread thread = new Thread(r, prefix + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    private int stageProperty(ListingStage stage, String name, int defaultValue) {
+        String key = String.format("nft.listing.stage.%s.%s", stage.name().toLowerCase(Locale.ROOT), name);
+        return environment.getProperty(key, Integer.class, defaultValue);
+    }
+}
@@ -0,0 +1,26 @@
+package com.pancakeswap.nft.publish.config;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+import java.util.Locale;
+
+@Getter
+@RequiredArgsConstructor
+public enum ListingStage {
+    // token id and token uri resolution, the calls are in flight on the node batcher, threads only hand off results
+    RESOLVE(2, 1000),
+    // metadata fetches are in flight on the token data client, threads only run the callbacks
+    METADATA(16, 200),
+    PARSE(Runtime.getRuntime().availableProcessors(), 200),
+    IMAGE(8, 100),
+    // tokens wait in the bulk writer holding a slot, the queue has to fit a full bulk
+    STORE(4, 1000);
+
+    private final int concurrency;
+    private final int queueSize;
+
+    public String metricName() {
+        return "listing-" + name().toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,168 @@
+package com.pancakeswap.nft.publish.config;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Worker pool of one listing stage shared by all jobs. Jobs are served round-robin,
+// a job never occupies more than its maxRunning workers.
+@Slf4j
+class StageExecutor {
+
+    private final ListingStage stage;
+    private final int concurrency;
+    private final ExecutorService workers;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition hasWork = lock.newCondition();
+    private final Deque<JobQueue> ready = new ArrayDeque<>();
+    // every queue holding tasks, scheduled or not
+    private final Set<JobQueue> pending = new HashSet<>();
+    private final AtomicInteger queued = new AtomicInteger();
+    private volatile boolean shutdown;
+
+    StageExecutor(ListingStage stage, int concurrency, ThreadFactory threadFactory) {
+        this.stage = stage;
+        this.concurrency = concurrency;
+        this.workers = Executors.newFixedThreadPool(concurrency, threadFactory);
+        for (int i = 0; i < concurrency; i++) {
+            workers.execute(this::work);
+        }
+    }
+
+    JobQueue newJobQueue(int maxRunning) {
+        return new JobQueue(Math.max(1, Math.min(maxRunning, concurrency)));
+    }
+
+    int getConcurrency() {
+        return concurrency;
+    }
+
+    int getQueued() {
+        return queued.get();
+    }
+
+    void submit(JobQueue queue, Runnable task) {
+        lock.lock();
+        try {
+            if (shutdown) {
+                throw new RejectedExecutionException(String.format("Stage %s is shut down", stage));
+            }
+            queue.tasks.addLast(task);
+            pending.add(queue);
+            queued.incrementAndGet();
+            scheduleIfIdle(queue);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Running tasks get the timeout to finish, queued ones never run and are abandoned
+    void shutdown(long timeout, TimeUnit unit) throws InterruptedException {
+        List<Runnable> dropped = new ArrayList<>();
+        lock.lock();
+        try {
+            shutdown = true;
+            for (JobQueue queue : pending) {
+                dropped.addAll(queue.tasks);
+                queue.tasks.clear();
+            }
+            pending.clear();
+            ready.clear();
+            queued.set(0);
+            hasWork.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        if (!dropped.isEmpty()) {
+            log.warn("Stage {} shut down with {} queued tasks, they are abandoned", stage, dropped.size());
+            dropped.forEach(task -> {
+                if (task instanceof Task t) {
+                    t.abandon();
+                }
+            });
+        }
+        workers.shutdown();
+        if (!workers.awaitTermination(timeout, unit)) {
+            log.warn("Stage {} did not finish in time, interrupting workers", stage);
+            workers.shutdownNow();
+        }
+    }
+
+    private void work() {
+        while (true) {
+            JobQueue queue;
+            Runnable task;
+            lock.lock();
+            try {
+                while (ready.isEmpty() && !shutdown) {
+                    hasWork.awaitUninterruptibly();
+                }
+                if (shutdown) {
+                    return;
+                }
+                queue = ready.pollFirst();
+                task = queue.tasks.pollFirst();
+                if (queue.tasks.isEmpty()) {
+                    pending.remove(queue);
+                }
+                queued.decrementAndGet();
+                queue.running++;
+                queue.scheduled = false;
+                scheduleIfIdle(queue);
+            } finally {
+                lock.unlock();
+            }
+
+            try {
+                task.run();
+            } catch (Throwable t) {
+                log.error("Unhandled error in stage {}", stage, t);
+            } finally {
+                lock.lock();
+                try {
+                    queue.running--;
+                    scheduleIfIdle(queue);
+                } finally {
+                    lock.unlock();
+                }
+            }
+        }
+    }
+
+    private void scheduleIfIdle(JobQueue queue) {
+        if (!queue.scheduled && !queue.tasks.isEmpty() && queue.running < queue.maxRunning) {
+            queue.scheduled = true;
+            ready.addLast(queue);
+            hasWork.signal();
+        }
+    }
+
+    // Task told when it will never run, so whoever waits for it can stop waiting
+    interface Task extends Runnable {
+        void abandon();
+    }
+
+    static class JobQueue {
+        private final int maxRunning;
+        private final Deque<Runnable> tasks = new ArrayDeque<>();
+        private int running;
+        private boolean scheduled;
+
+        private JobQueue(int maxRunning) {
+            this.maxRunning = maxRunning;
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package com.pancakeswap.nft.publish.config;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntSupplier;
+
+// Queue depth and latency of the worker stages: wait is the time a task spends queued, run is the time it runs
+@Slf4j
+@Component
+public class StageMetrics {
+
+    private final Map<String, Stage> stages = new ConcurrentHashMap<>();
+
+    public void register(String stage, IntSupplier queueDepth) {
+        stages.computeIfAbsent(stage, k -> new Stage()).queueDepth = queueDepth;
+    }
+
+    public void record(String stage, long waitNanos, long runNanos) {
+        Stage metrics = stages.computeIfAbsent(stage, k -> new Stage());
+        metrics.completed.increment();
+        metrics.waitNanos.add(waitNanos);
+        metrics.runNanos.add(runNanos);
+        metrics.maxRunNanos.accumulate(runNanos);
+    }
+
+    public List<StageSnapshot> snapshot() {
+        return stages.entrySet().stream()
+                .map(e -> e.getValue().snapshot(e.getKey()))
+                .sorted(Comparator.comparing(StageSnapshot::stage))
+                .toList();
+    }
+
+    @Scheduled(fixedDelayString = "${nft.metrics.log.interval:60000}", initialDelayString = "${nft.metrics.log.interval:60000}")
+    public void logMetrics() {
+        stages.forEach((name, stage) -> {
+            StageSnapshot snapshot = stage.snapshot(name);
+            if (snapshot.completed() != stage.loggedCompleted || snapshot.queueDepth() > 0) {
+                stage.loggedCompleted = snapshot.completed();
+                log.info("Stage {}: queued {}, completed {}, avg wait {} ms, avg run {} ms, max run {} ms", name,
+                        snapshot.queueDepth(), snapshot.completed(), snapshot.avgWaitMs(), snapshot.avgRunMs(), snapshot.maxRunMs());
+            }
+        });
+    }
+
+    public record StageSnapshot(String stage, int queueDepth, long completed, long avgWaitMs, long avgRunMs, long maxRunMs) {
+    }
+
+    private static class Stage {
+        private volatile IntSupplier queueDepth = () -> 0;
+        private final LongAdder completed = new LongAdder();
+        private final LongAdder waitNanos = new LongAdder();
+        private final LongAdder runNanos = new LongAdder();
+        private final LongAccumulator maxRunNanos = new LongAccumulator(Math::max, 0);
+        private volatile long loggedCompleted;
+
+        private StageSnapshot snapshot(String name) {
+            long count = completed.sum();
+            return new StageSnapshot(name, queueDepth.getAsInt(), count,
+                    count == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(waitNanos.sum() / count),
+                    count == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(runNanos.sum() / count),
+                    TimeUnit.NANOSECONDS.toMillis(maxRunNanos.get()));
+        }
+    }
+}
@@ -2,6 +2,7 @@ package com.pancakeswap.nft.publish.controller;
 
 import com.pancakeswap.nft.publish.exception.ListingException;
 import com.pancakeswap.nft.publish.model.dto.collection.CollectionDataDto;
+import com.pancakeswap.nft.publish.service.AttributeMigration;
 import com.pancakeswap.nft.publish.service.BunnyNFTService;
 import com.pancakeswap.nft.publish.service.NFTService;
 import io.github.bucket4j.Bandwidth;
@@ -35,10 +36,12 @@ public class CollectionController {
 
     private final NFTService nftService;
     private final BunnyNFTService bunnyNftService;
+    private final AttributeMigration attributeMigration;
 
-    public CollectionController(NFTService nftService, BunnyNFTService bunnyNftService) {
+    public CollectionController(NFTService nftService, BunnyNFTService bunnyNftService, AttributeMigration attributeMigration) {
         this.nftService = nftService;
         this.bunnyNftService = bunnyNftService;
+        this.attributeMigration = attributeMigration;
     }
 
     @PostMapping(path = "/collections")
@@ -98,6 +101,20 @@ public class CollectionController {
         }
     }
 
+    // run once, while no collection is being listed
+    @PostMapping(path = "/migrations/attributes")
+    public ResponseEntity<String> mergeDuplicateAttributes(@RequestHeader(value = SECURE_TOKEN) String secureToken) {
+        Optional<ResponseEntity<String>> responseEntity = isRequestNotAllowed(secureToken);
+        if (responseEntity.isPresent()) {
+            return responseEntity.get();
+        }
+        return switch (attributeMigration.start()) {
+            case STARTED -> ResponseEntity.ok("Migration has been initiated");
+            case RUNNING -> ResponseEntity.status(HttpStatus.CONFLICT).body("Migration already in progress");
+            case DONE -> ResponseEntity.ok("Migration already done");
+        };
+    }
+
     private Optional<ResponseEntity<String>> isRequestNotAllowed(String secureToken) {
         if (isValidToken(secureToken)) {
             return Optional.of(ResponseEntity.status(HttpStatus.UNAUTHORIZED).build());
@@ -0,0 +1,44 @@
+package com.pancakeswap.nft.publish.controller;
+
+import com.pancakeswap.nft.publish.config.StageMetrics;
+import com.pancakeswap.nft.publish.service.IpfsGatewayPool;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.List;
+import java.util.function.Supplier;
+
+@RestController
+@RequiredArgsConstructor
+public class MetricsController {
+
+    private static final String SECURE_TOKEN = "x-secure-token";
+
+    @Value(value = "${secure.token}")
+    public String accessToken;
+
+    private final StageMetrics stageMetrics;
+    private final IpfsGatewayPool ipfsGatewayPool;
+
+    @GetMapping(path = "/metrics/stages")
+    public ResponseEntity<List<StageMetrics.StageSnapshot>> stages(@RequestHeader(value = SECURE_TOKEN) String secureToken) {
+        return authorized(secureToken, stageMetrics::snapshot);
+    }
+
+    @GetMapping(path = "/metrics/gateways")
+    public ResponseEntity<List<IpfsGatewayPool.GatewaySnapshot>> gateways(@RequestHeader(value = SECURE_TOKEN) String secureToken) {
+        return authorized(secureToken, ipfsGatewayPool::snapshot);
+    }
+
+    private <T> ResponseEntity<T> authorized(String secureToken, Supplier<T> body) {
+        if (!accessToken.equals(secureToken)) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+        }
+        return ResponseEntity.ok(body.get());
+    }
+}
@@ -1,9 +1,11 @@
 package com.pancakeswap.nft.publish.cron;
 
 import com.pancakeswap.nft.publish.config.FutureConfig;
+import com.pancakeswap.nft.publish.config.ListingExecutor;
 import com.pancakeswap.nft.publish.model.dto.collection.ListCollectionTokenParams;
 import com.pancakeswap.nft.publish.model.entity.Collection;
 import com.pancakeswap.nft.publish.model.entity.CollectionInfo;
+import com.pancakeswap.nft.publish.model.entity.ImageVariant;
 import com.pancakeswap.nft.publish.repository.CollectionInfoRepository;
 import com.pancakeswap.nft.publish.service.*;
 import lombok.RequiredArgsConstructor;
@@ -13,8 +15,8 @@ import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 
 import java.math.BigInteger;
+import java.util.List;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicInteger;
 
 import static com.pancakeswap.nft.publish.util.UrlUtil.getIpfsFormattedUrl;
 
@@ -29,6 +31,8 @@ public class UpdateMoboxCollection {
     private final CollectionInfoRepository collectionInfoRepository;
     private final MoboxTokenService moboxTokenService;
     private final NFTService nftService;
+    private final ListingExecutor listingExecutor;
+    private final ImageService imageService;
 
     @Scheduled(fixedDelay = 15, timeUnit = TimeUnit.MINUTES, initialDelay = 1)
     public void updateNewMintedAndLevel() {
@@ -40,7 +44,8 @@ public class UpdateMoboxCollection {
                 if (info.getLastTokenId() != null && info.getLastTokenId() < onChainLastTokenId) {
                     int totalSupply = blockChainService.getTotalSupply(MOBOX_COLLECTION_ADDRESS).intValue();
 
-                    FutureConfig config = FutureConfig.init();
+                    FutureConfig config = listingExecutor.newJob();
+                    List<ImageVariant> variants = imageService.tokenImageVariants(info.getImageSizes(), info.getImageFormat());
                     for (int i = info.getLastTokenId() + 1; i <= onChainLastTokenId; i++) {
                         String url = null;
                         try {
@@ -48,25 +53,26 @@ public class UpdateMoboxCollection {
                             ListCollectionTokenParams params = new ListCollectionTokenParams(moboxCollection.getId(), MOBOX_COLLECTION_ADDRESS);
                             params.setIsModifiedTokenName(info.getIsModifiedTokenName());
                             params.setOnlyGif(info.getOnlyGif());
+                            params.setImageVariants(variants);
                             params.setTokenId(String.valueOf(i));
                             params.setTokenUrl(url);
 
-                            nftService.loadAndStoreTokenDataAsync(config, params, new AtomicInteger(0));
+                            nftService.loadAndStoreTokenDataAsync(config, params);
                         } catch (Exception e) {
                             log.error("Failed to store token index/id: {}, url: {}, collectionId: {}. Error message: {}", i, url, moboxCollection.getId(), e.getMessage());
                         }
                     }
-                    nftService.postListActions(config, moboxCollection.getId());
+                    nftService.postListActions(config, moboxCollection.getId(), moboxCollection.getAddress());
 
                     info.setLastTokenId(onChainLastTokenId);
-                    collectionInfoRepository.save(info);
+                    collectionInfoRepository.findAndSetLastTokenIdById(info.getId(), onChainLastTokenId);
 
                     moboxCollection.setTotalSupply(totalSupply);
                     dbService.storeCollection(moboxCollection);
                     log.info("Mobox new minted updated. Address : {}", MOBOX_COLLECTION_ADDRESS);
                 }
 
-                moboxTokenService.updateLevels(moboxCollection);
+                moboxTokenService.refreshLevels(moboxCollection, info);
                 log.info("Mobox tokens lvl updated");
             } catch (Exception ex) {
                 log.error("Failed to update Mobox tokens lvl, due to: {}", ex.getMessage());
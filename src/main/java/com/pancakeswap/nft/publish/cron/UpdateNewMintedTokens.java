@@ -1,20 +1,28 @@
 package com.pancakeswap.nft.publish.cron;
 
 import com.pancakeswap.nft.publish.config.FutureConfig;
+import com.pancakeswap.nft.publish.config.ListingExecutor;
 import com.pancakeswap.nft.publish.model.dto.collection.CollectionDataDto;
 import com.pancakeswap.nft.publish.model.entity.Collection;
 import com.pancakeswap.nft.publish.model.entity.CollectionInfo;
+import com.pancakeswap.nft.publish.model.entity.CollectionType;
+import com.pancakeswap.nft.publish.model.sc.TransferEvent;
 import com.pancakeswap.nft.publish.repository.CollectionInfoRepository;
 import com.pancakeswap.nft.publish.repository.CollectionRepository;
 import com.pancakeswap.nft.publish.service.BlockChainService;
 import com.pancakeswap.nft.publish.service.NFTService;
+import com.pancakeswap.nft.publish.service.TransferSyncService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.bson.types.ObjectId;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 
+import java.io.IOException;
 import java.math.BigInteger;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
 
@@ -27,30 +35,80 @@ public class UpdateNewMintedTokens {
     private final CollectionRepository collectionRepository;
     private final CollectionInfoRepository collectionInfoRepository;
     private final BlockChainService blockChainService;
+    private final ListingExecutor listingExecutor;
+    private final TransferSyncService transferSyncService;
 
     @Scheduled(fixedDelay = 60, initialDelay = 30, timeUnit = TimeUnit.MINUTES)
-    public void updateCollections() throws ExecutionException, InterruptedException {
+    public void updateCollections() {
         for (Collection collection : collectionRepository.findAll()) {
             CollectionInfo info = collectionInfoRepository.findByCollectionId(new ObjectId(collection.getId()));
             if (info != null && info.getIsCron()) {
-                FutureConfig config = FutureConfig.init();
-                switch (info.getType()) {
-                    case ENUMERABLE -> {
-                        BigInteger totalSupply = blockChainService.getTotalSupply(collection.getAddress());
-                        if (totalSupply.intValue() > collection.getTotalSupply()) {
-                            nftService.listNFT(config, from(collection, info), collection.getTotalSupply() - 1);
-                            collection.setTotalSupply(totalSupply.intValue());
-                            collectionRepository.save(collection);
-                        }
+                try {
+                    if (info.getLastSyncedBlock() != null) {
+                        syncTransfers(collection, info);
+                    } else {
+                        enumerateNewMints(collection, info);
                     }
-                    case NO_ENUMERABLE_INFINITE ->
-                            nftService.listNoEnumerableInfiniteNFT(config, from(collection, info), collection.getTotalSupply());
+                    log.info("New minted tokens for collection {} has been updated", collection.getAddress());
+                } catch (Exception e) {
+                    log.error("Failed to update new minted tokens for collection {}. Error: {}", collection.getAddress(), e.getMessage());
                 }
-                log.info("New minted tokens for collection {} has been updated", collection.getAddress());
             }
         }
     }
 
+    // Lists the tokens minted since the checkpoint and marks the burned ones, both found by their Transfer logs
+    // from and to the zero address. Mints are listed first, so a token minted and burned in the range ends up burned
+    private void syncTransfers(Collection collection, CollectionInfo info) throws IOException, ExecutionException, InterruptedException {
+        BigInteger head = transferSyncService.confirmedHead();
+        BigInteger fromBlock = BigInteger.valueOf(info.getLastSyncedBlock() + 1);
+        if (fromBlock.compareTo(head) > 0) {
+            return;
+        }
+
+        List<TransferEvent> events = transferSyncService.scanTransfers(collection.getAddress(), fromBlock, head);
+        Set<String> minted = new LinkedHashSet<>();
+        events.stream().filter(TransferEvent::isMint).forEach(event -> minted.add(event.getTokenId().toString()));
+        if (!minted.isEmpty()) {
+            nftService.listTokens(listingExecutor.newJob(), from(collection, info), collection.getId(), minted);
+        }
+        int burned = transferSyncService.applyTransfers(collection.getId(), events);
+        if (burned > 0) {
+            log.info("{} tokens of collection {} burned", burned, collection.getAddress());
+        }
+        if (!minted.isEmpty() || burned > 0) {
+            // the supply of other collections is their enumeration cursor, burns don't move it
+            collection.setTotalSupply(info.getType() == CollectionType.ENUMERABLE
+                    ? blockChainService.getTotalSupply(collection.getAddress()).intValue()
+                    : collection.getTotalSupply() + minted.size());
+            collectionRepository.save(collection);
+        }
+
+        collectionInfoRepository.findAndSetLastSyncedBlockById(info.getId(), head.longValue());
+    }
+
+    // Collections without a checkpoint are enumerated once more, the head read before sets the checkpoint
+    private void enumerateNewMints(Collection collection, CollectionInfo info) throws IOException, ExecutionException, InterruptedException {
+        BigInteger head = transferSyncService.confirmedHead();
+        FutureConfig config = listingExecutor.newJob();
+        switch (info.getType()) {
+            case ENUMERABLE -> {
+                BigInteger totalSupply = blockChainService.getTotalSupply(collection.getAddress());
+                if (totalSupply.intValue() > collection.getTotalSupply()) {
+                    nftService.listNFT(config, from(collection, info), collection.getTotalSupply() - 1);
+                    collection.setTotalSupply(totalSupply.intValue());
+                    collectionRepository.save(collection);
+                }
+            }
+            case NO_ENUMERABLE_INFINITE ->
+                    nftService.listNoEnumerableInfiniteNFT(config, from(collection, info), collection.getTotalSupply());
+            default -> {
+                return;
+            }
+        }
+        collectionInfoRepository.findAndSetLastSyncedBlockById(info.getId(), head.longValue());
+    }
+
     private CollectionDataDto from(Collection collection, CollectionInfo collectionInfo) {
         CollectionDataDto dataDto = new CollectionDataDto();
         dataDto.setAddress(collection.getAddress());
@@ -61,6 +119,8 @@ public class UpdateNewMintedTokens {
 
         dataDto.setIsModifiedTokenName(collectionInfo.getIsModifiedTokenName());
         dataDto.setOnlyGif(collectionInfo.getOnlyGif());
+        dataDto.setImageSizes(collectionInfo.getImageSizes());
+        dataDto.setImageFormat(collectionInfo.getImageFormat());
 
         return dataDto;
     }
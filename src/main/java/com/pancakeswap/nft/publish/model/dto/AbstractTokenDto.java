@@ -1,7 +1,10 @@
 package com.pancakeswap.nft.publish.model.dto;
 
+import com.pancakeswap.nft.publish.model.entity.ImageVariant;
 import lombok.Data;
 
+import java.util.List;
+
 @Data
 public abstract class AbstractTokenDto {
     private String tokenId;
@@ -15,4 +18,6 @@ public abstract class AbstractTokenDto {
     private Boolean isWebm;
     private Boolean isGif;
 
+    private List<ImageVariant> variants;
+
 }
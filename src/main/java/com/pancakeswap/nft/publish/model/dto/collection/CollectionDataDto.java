@@ -6,6 +6,9 @@ import lombok.EqualsAndHashCode;
 import lombok.NoArgsConstructor;
 
 import javax.validation.constraints.NotNull;
+import javax.validation.constraints.Pattern;
+import javax.validation.constraints.Positive;
+import java.util.List;
 
 @EqualsAndHashCode(callSuper = true)
 @Data
@@ -34,5 +37,10 @@ public class CollectionDataDto extends CollectionImageDto {
     private Integer startIndex;
     private Integer totalSupply;
 
+    // derivative sizes and format of token images, 1000px png when not set
+    private List<@Positive Integer> imageSizes;
+    @Pattern(regexp = "png|webp|avif")
+    private String imageFormat;
+
 
 }
@@ -1,9 +1,12 @@
 package com.pancakeswap.nft.publish.model.dto.collection;
 
+import com.pancakeswap.nft.publish.model.entity.ImageVariant;
 import lombok.Getter;
 import lombok.RequiredArgsConstructor;
 import lombok.Setter;
 
+import java.util.List;
+
 @Getter
 @Setter
 @RequiredArgsConstructor
@@ -14,4 +17,5 @@ public class ListCollectionTokenParams {
     private String tokenUrl;
     private Boolean onlyGif;
     private Boolean isModifiedTokenName;
+    private List<ImageVariant> imageVariants;
 }
@@ -13,6 +13,7 @@ import org.springframework.data.mongodb.core.mapping.Field;
 
 import javax.validation.constraints.NotNull;
 import java.util.Date;
+import java.util.List;
 
 @Document(collection = "collections_info")
 @Data
@@ -35,6 +36,14 @@ public class CollectionInfo {
     private Boolean isCron;
     private String failedIds;
     private Integer lastTokenId;
+    // last block whose Transfer logs are synced
+    private Long lastSyncedBlock;
+    // last block whose logs are checked for token level changes (Mobox)
+    private Long levelSyncedBlock;
+    // last time the levels of all tokens were read (Mobox)
+    private Date levelRefreshedAt;
+    private List<Integer> imageSizes;
+    private String imageFormat;
 
     @Field("created_at")
     @CreatedDate
@@ -0,0 +1,40 @@
+package com.pancakeswap.nft.publish.model.entity;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+import org.springframework.data.mongodb.core.mapping.Field;
+
+import javax.validation.constraints.NotNull;
+import java.util.Date;
+import java.util.Map;
+
+@Document(collection = "image_contents")
+@Data
+@NoArgsConstructor
+public class ImageContent {
+
+    // <type>:<sha256 of the source bytes>
+    @Id
+    private String id;
+
+    @NotNull(message = "image content hash cant not be null")
+    private String hash;
+
+    @NotNull(message = "image content type cant not be null")
+    private String type;
+
+    @NotNull(message = "image content image cant not be null")
+    private String image;
+
+    // 1000px png derivative of contents recorded before variants
+    private String resized;
+
+    // <size>_<format> -> S3 key of the derivative, derivatives of every size spec that uploaded this content
+    private Map<String, String> variants;
+
+    @Field("created_at")
+    private Date createdAt;
+
+}
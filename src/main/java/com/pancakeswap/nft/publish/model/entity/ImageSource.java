@@ -0,0 +1,27 @@
+package com.pancakeswap.nft.publish.model.entity;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+import org.springframework.data.mongodb.core.mapping.Field;
+
+import javax.validation.constraints.NotNull;
+import java.util.Date;
+
+@Document(collection = "image_sources")
+@Data
+@NoArgsConstructor
+public class ImageSource {
+
+    // source url
+    @Id
+    private String id;
+
+    @NotNull(message = "image source hash cant not be null")
+    private String hash;
+
+    @Field("created_at")
+    private Date createdAt;
+
+}
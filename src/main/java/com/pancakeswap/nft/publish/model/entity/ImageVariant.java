@@ -0,0 +1,18 @@
+package com.pancakeswap.nft.publish.model.entity;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// Derivative of a token image, stored as <token name>-<size>.<format> next to the original
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ImageVariant {
+
+    // longest side in pixels, images already smaller are not upscaled
+    private Integer size;
+
+    private String format;
+
+}
@@ -9,6 +9,7 @@ import org.springframework.data.mongodb.core.mapping.Field;
 
 import javax.validation.constraints.NotNull;
 import java.util.Date;
+import java.util.List;
 
 @Document(collection = "metadata")
 @Data
@@ -31,6 +32,8 @@ public class Metadata {
     private Boolean webm;
     private Boolean gif;
 
+    private List<ImageVariant> variants;
+
     @Field("created_at")
     private Date createdAt;
     @Field("updated_at")
@@ -0,0 +1,33 @@
+package com.pancakeswap.nft.publish.model.entity;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+import org.springframework.data.mongodb.core.mapping.Field;
+
+import java.util.Date;
+
+@Document(collection = "migrations")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class Migration {
+
+    // <name>_v<version>, the unique id lets a single instance claim a migration
+    @Id
+    private String id;
+
+    private MigrationState state;
+
+    @Field("started_at")
+    private Date startedAt;
+    @Field("finished_at")
+    private Date finishedAt;
+
+    public enum MigrationState {
+        RUNNING,
+        DONE
+    }
+}
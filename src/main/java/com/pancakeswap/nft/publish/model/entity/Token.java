@@ -33,8 +33,14 @@ public class Token {
     @NotNull(message = "token attributes cant not be null")
     private List<ObjectId> attributes;
 
+    // trait_type/value of the attributes, only kept with nft.tokens.traits.enabled
+    private List<TokenTrait> traits;
+
     private Boolean burned;
 
+    // last receiver seen in the Transfer logs, only kept with nft.tokens.owner.tracking
+    private String owner;
+
     @Field("created_at")
     private Date createdAt;
     @Field("updated_at")
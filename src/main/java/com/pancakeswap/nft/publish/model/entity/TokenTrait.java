@@ -0,0 +1,23 @@
+package com.pancakeswap.nft.publish.model.entity;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.bson.types.ObjectId;
+import org.springframework.data.mongodb.core.mapping.Field;
+
+// Copy of an attribute embedded in the token, so trait reads don't join the attributes collection
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class TokenTrait {
+
+    @Field("trait_type")
+    private String traitType;
+
+    private String value;
+
+    // id of the attribute in token attributes
+    private ObjectId attribute;
+
+}
@@ -0,0 +1,27 @@
+package com.pancakeswap.nft.publish.model.sc;
+
+import java.util.Locale;
+
+// Position of a uint argument in an event log: an indexed argument is topic1-3, the others are data words
+// in declaration order, data0 being the first. Written as "topic2" or "data0"
+public record LogField(boolean indexed, int position) {
+
+    public static LogField parse(String value) {
+        String field = value.trim().toLowerCase(Locale.ROOT);
+        try {
+            if (field.startsWith("topic")) {
+                int topic = Integer.parseInt(field.substring("topic".length()));
+                if (topic >= 1 && topic <= 3) {
+                    return new LogField(true, topic);
+                }
+            } else if (field.startsWith("data")) {
+                int word = Integer.parseInt(field.substring("data".length()));
+                if (word >= 0) {
+                    return new LogField(false, word);
+                }
+            }
+        } catch (NumberFormatException ignore) {
+        }
+        throw new IllegalArgumentException(String.format("Invalid log field '%s', expected topic1-3 or data0, data1, ...", value));
+    }
+}
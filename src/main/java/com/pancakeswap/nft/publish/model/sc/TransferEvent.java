@@ -0,0 +1,29 @@
+package com.pancakeswap.nft.publish.model.sc;
+
+import lombok.Data;
+import lombok.RequiredArgsConstructor;
+
+import java.math.BigInteger;
+
+// ERC-721 Transfer(from, to, tokenId) log, addresses are lowercase
+@Data
+@RequiredArgsConstructor
+public class TransferEvent {
+
+    public static final String ZERO_ADDRESS = "0x0000000000000000000000000000000000000000";
+
+    private final String from;
+    private final String to;
+    private final BigInteger tokenId;
+    private final BigInteger blockNumber;
+    private final BigInteger logIndex;
+
+    public boolean isMint() {
+        return ZERO_ADDRESS.equals(from);
+    }
+
+    public boolean isBurn() {
+        return ZERO_ADDRESS.equals(to);
+    }
+
+}
@@ -0,0 +1,6 @@
+package com.pancakeswap.nft.publish.model.sc;
+
+// Transfer logs requested from the node: all of them, the ones from the zero address or the ones to it
+public enum TransferFilter {
+    ALL, MINTS, BURNS
+}
@@ -1,12 +1,14 @@
 package com.pancakeswap.nft.publish.profile.local;
 
 import com.pancakeswap.nft.publish.model.dto.AbstractTokenDto;
+import com.pancakeswap.nft.publish.model.entity.ImageVariant;
 import com.pancakeswap.nft.publish.service.ImageService;
 import com.pancakeswap.nft.publish.service.TokenMetadata;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.context.annotation.Profile;
 import org.springframework.stereotype.Service;
 
+import java.util.List;
 import java.util.Set;
 
 @Slf4j
@@ -25,8 +27,19 @@ public class LocalImageService implements ImageService {
     }
 
     @Override
-    public void s3UploadTokenImagesAsync(String collectionAddress, String imageUrl, AbstractTokenDto tokenData, Set<String> tokenIdsFailed, TokenMetadata metadata) {
+    public boolean s3UploadTokenImagesAsync(String collectionAddress, String imageUrl, AbstractTokenDto tokenData, Set<String> tokenIdsFailed, TokenMetadata metadata, List<ImageVariant> variants) {
         log.info("Called s3UploadTokenImagesAsync");
+        return true;
+    }
+
+    @Override
+    public List<ImageVariant> tokenImageVariants(List<Integer> sizes, String format) {
+        return List.of();
+    }
+
+    @Override
+    public void releaseCollection(String collectionAddress) {
+        log.info("Called releaseCollection");
     }
 
 }
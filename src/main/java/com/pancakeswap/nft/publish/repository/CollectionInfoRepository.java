@@ -3,9 +3,25 @@ package com.pancakeswap.nft.publish.repository;
 import com.pancakeswap.nft.publish.model.entity.CollectionInfo;
 import org.bson.types.ObjectId;
 import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.data.mongodb.repository.Update;
+
+import java.util.Date;
 
 public interface CollectionInfoRepository extends MongoRepository<CollectionInfo, String> {
     CollectionInfo findByCollectionId(ObjectId collectionId);
 
     void deleteByCollectionId(ObjectId collectionId);
+
+    // checkpoints are set alone, a full save would overwrite the failed ids stored by the listing meanwhile
+    @Update("{ '$set' : { 'lastSyncedBlock' : ?1 } }")
+    void findAndSetLastSyncedBlockById(String id, Long lastSyncedBlock);
+
+    @Update("{ '$set' : { 'levelSyncedBlock' : ?1 } }")
+    void findAndSetLevelSyncedBlockById(String id, Long levelSyncedBlock);
+
+    @Update("{ '$set' : { 'levelRefreshedAt' : ?1 } }")
+    void findAndSetLevelRefreshedAtById(String id, Date levelRefreshedAt);
+
+    @Update("{ '$set' : { 'lastTokenId' : ?1 } }")
+    void findAndSetLastTokenIdById(String id, Integer lastTokenId);
 }
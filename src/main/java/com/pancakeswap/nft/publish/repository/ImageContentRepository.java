@@ -0,0 +1,7 @@
+package com.pancakeswap.nft.publish.repository;
+
+import com.pancakeswap.nft.publish.model.entity.ImageContent;
+import org.springframework.data.mongodb.repository.MongoRepository;
+
+public interface ImageContentRepository extends MongoRepository<ImageContent, String> {
+}
@@ -0,0 +1,7 @@
+package com.pancakeswap.nft.publish.repository;
+
+import com.pancakeswap.nft.publish.model.entity.ImageSource;
+import org.springframework.data.mongodb.repository.MongoRepository;
+
+public interface ImageSourceRepository extends MongoRepository<ImageSource, String> {
+}
@@ -1,21 +1,25 @@
 package com.pancakeswap.nft.publish.service;
 
 import com.pancakeswap.nft.publish.config.FutureConfig;
+import com.pancakeswap.nft.publish.config.ListingExecutor;
 import com.pancakeswap.nft.publish.exception.ListingException;
 import com.pancakeswap.nft.publish.model.dto.collection.ListCollectionTokenParams;
+import com.pancakeswap.nft.publish.model.entity.CollectionInfo;
+import com.pancakeswap.nft.publish.model.entity.ImageVariant;
 import com.pancakeswap.nft.publish.service.cache.CacheService;
+import com.pancakeswap.nft.publish.service.cache.TokenResponseCache;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 
 import java.math.BigInteger;
-import java.net.http.HttpResponse;
 import java.util.*;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.CompletionException;
 import java.util.stream.Collectors;
 
+import static com.pancakeswap.nft.publish.config.ListingStage.METADATA;
+import static com.pancakeswap.nft.publish.config.ListingStage.PARSE;
 import static com.pancakeswap.nft.publish.model.dto.response.CollectionListingFailedResponse.*;
-import static com.pancakeswap.nft.publish.util.FutureUtils.waitFutureRequestFinished;
 import static com.pancakeswap.nft.publish.util.UrlUtil.getIpfsFormattedUrl;
 
 @Slf4j
@@ -27,23 +31,28 @@ public abstract class AbstractNFTService {
     protected final TokenDataService tokenDataService;
     protected final BlockChainService blockChainService;
     protected final CacheService cacheService;
-
-    private final Map<String, String> tokenResponse = Collections.synchronizedMap(new HashMap<>());
+    protected final ListingExecutor listingExecutor;
+    protected final TokenResponseCache tokenResponseCache;
 
     public void relistNft(String collectionAddress, String[] tokenIds) {
-        FutureConfig config = FutureConfig.init();
+        FutureConfig config = listingExecutor.newJob();
         String collectionId = dbService.getCollection(collectionAddress).getId();
+        CollectionInfo info = dbService.getCollectionInfo(collectionId);
+        List<ImageVariant> variants = info != null
+                ? imageService.tokenImageVariants(info.getImageSizes(), info.getImageFormat())
+                : imageService.tokenImageVariants(null, null);
 
         Arrays.asList(tokenIds).forEach(tokenId -> {
             try {
                 ListCollectionTokenParams params = new ListCollectionTokenParams(collectionId, collectionAddress);
                 params.setTokenId(tokenId);
-                loadAndStoreTokenDataAsync(config, params, new AtomicInteger(0));
+                params.setImageVariants(variants);
+                loadAndStoreTokenDataAsync(config, params);
             } catch (Exception e) {
                 log.error("Failed to store token id: {}, collectionId: {}. Error: {}", tokenId, collectionId, e.getMessage());
             }
         });
-        postListActions(config, collectionId);
+        postListActions(config, collectionId, collectionAddress);
     }
 
     public CompletableFuture<Boolean> isListingPossible(String collectionAddress) {
@@ -64,50 +73,50 @@ public abstract class AbstractNFTService {
 
     protected abstract void loadAndStoreTokenData(FutureConfig config, String body, ListCollectionTokenParams params);
 
-    public void loadAndStoreTokenDataAsync(FutureConfig config, ListCollectionTokenParams params, AtomicInteger attempt) {
-        config.addFuture(() -> {
-            try {
-                String url = params.getTokenUrl();
-                if (url == null) {
-                    url = getIpfsFormattedUrl(blockChainService.getTokenURI(params.getCollectionAddress(), new BigInteger(params.getTokenId())));
-                    params.setTokenUrl(url);
-                }
-
-                if (tokenResponse.get(url) != null) {
-                    loadAndStoreTokenData(config, tokenResponse.get(url), params);
-                } else {
-                    try {
-                        HttpResponse<String> res = tokenDataService.call(url);
-                        if (res.statusCode() != 200) {
-                            loadAndStoreTokenDataAsyncNextAttempt(config, params, attempt, "Response code: " + res.statusCode());
-                        } else {
-                            tokenResponse.putIfAbsent(url, res.body());
-                            loadAndStoreTokenData(config, res.body(), params);
-                        }
-                    } catch (Exception e) {
-                        loadAndStoreTokenDataAsyncNextAttempt(config, params, attempt, e.getMessage());
+    public void loadAndStoreTokenDataAsync(FutureConfig config, ListCollectionTokenParams params) {
+        config.addFuture(METADATA, () -> tokenUrl(params).thenCompose(url -> {
+                    String cached = tokenResponseCache.get(params.getCollectionId(), url);
+                    if (cached != null) {
+                        return CompletableFuture.completedFuture(cached);
                     }
-                }
-            } catch (Exception ex) {
-                config.addFailedTokenId(params.getTokenId());
-                log.debug("Failed to store token index: {}, id: {}, collectionId: {}", params.getTokenId(), params.getCollectionId(), ex.getMessage());
-            }
-        });
+                    return tokenDataService.fetch(url)
+                            .thenApply(body -> {
+                                tokenResponseCache.put(params.getCollectionId(), url, body);
+                                return body;
+                            });
+                }),
+                (body, e) -> {
+                    if (e != null) {
+                        config.addFailedTokenId(params.getTokenId());
+                        log.error("Can't fetch token data from: {}. Token id: {}. {}", params.getTokenUrl(), params.getTokenId(),
+                                e instanceof CompletionException && e.getCause() != null ? e.getCause().getMessage() : e.getMessage());
+                    } else {
+                        parseAndStoreTokenDataAsync(config, body, params);
+                    }
+                });
     }
 
-    private void loadAndStoreTokenDataAsyncNextAttempt(FutureConfig config, ListCollectionTokenParams params, AtomicInteger attempt, String failReason) {
-        int attemptValue = attempt.incrementAndGet();
-        if (attemptValue < 10) {
-            loadAndStoreTokenDataAsync(config, params, attempt);
-        } else {
-            config.addFailedTokenId(params.getTokenId());
-            log.error("Can't fetch token data from: {}. Token id: {}. Attempt: {}. Error message: {}", params.getTokenUrl(), params.getTokenId(), attemptValue, failReason);
+    private CompletableFuture<String> tokenUrl(ListCollectionTokenParams params) {
+        if (params.getTokenUrl() != null) {
+            return CompletableFuture.completedFuture(params.getTokenUrl());
         }
+        return blockChainService.getTokenURIAsync(params.getCollectionAddress(), new BigInteger(params.getTokenId()))
+                .thenApply(uri -> {
+                    String url = getIpfsFormattedUrl(uri);
+                    params.setTokenUrl(url);
+                    return url;
+                });
+    }
+
+    private void parseAndStoreTokenDataAsync(FutureConfig config, String body, ListCollectionTokenParams params) {
+        config.addFuture(PARSE, () -> loadAndStoreTokenData(config, body, params));
     }
 
-    public void postListActions(FutureConfig config, String collectionId) {
-        waitFutureRequestFinished(config);
-        log.info("Fetching tokens for collection: {} finished", collectionId);
+    public void postListActions(FutureConfig config, String collectionId, String collectionAddress) {
+        config.awaitCompletion();
+        dbService.evictAttributes(collectionId);
+        imageService.releaseCollection(collectionAddress);
+        log.info("Fetching tokens for collection: {} finished. Token response cache: {}", collectionId, tokenResponseCache.stats());
 
         if (!config.getTokenIdsFailed().isEmpty()) {
             String failedIds = config.getTokenIdsFailed().stream().sorted(Comparator.comparing(Integer::valueOf)).collect(Collectors.joining(","));
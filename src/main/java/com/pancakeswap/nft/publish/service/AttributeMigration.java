@@ -0,0 +1,136 @@
+package com.pancakeswap.nft.publish.service;
+
+import com.pancakeswap.nft.publish.model.entity.Attribute;
+import com.pancakeswap.nft.publish.model.entity.Migration;
+import com.pancakeswap.nft.publish.model.entity.Token;
+import com.pancakeswap.nft.publish.model.entity.TokenTrait;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.AggregationOptions;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import static com.pancakeswap.nft.publish.model.entity.Migration.MigrationState.DONE;
+import static com.pancakeswap.nft.publish.model.entity.Migration.MigrationState.RUNNING;
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+import static org.springframework.data.mongodb.core.query.Query.query;
+
+// One-off merge of the duplicate attributes left by writers older than the unique index.
+// Started by an admin call, the migrations document lets a single instance run it once: the claim is an insert
+// of its id, a failed run drops the claim so it can be started again.
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class AttributeMigration {
+
+    public static final String MERGE_DUPLICATES = "attributes_merge_duplicates_v1";
+
+    private static final int MIGRATION_BATCH_SIZE = 1000;
+    // listings running meanwhile can insert new duplicates until the index exists
+    private static final int MAX_ROUNDS = 3;
+
+    private final MongoTemplate mongoTemplate;
+    private final AttributeService attributeService;
+
+    public enum Status {
+        STARTED,
+        RUNNING,
+        DONE
+    }
+
+    public Status start() {
+        try {
+            mongoTemplate.insert(new Migration(MERGE_DUPLICATES, RUNNING, new Date(), null));
+        } catch (DuplicateKeyException e) {
+            Migration migration = mongoTemplate.findById(MERGE_DUPLICATES, Migration.class);
+            return migration != null && migration.getState() == DONE ? Status.DONE : Status.RUNNING;
+        }
+        CompletableFuture.runAsync(this::run);
+        return Status.STARTED;
+    }
+
+    private void run() {
+        try {
+            int round = 0;
+            do {
+                if (++round > MAX_ROUNDS) {
+                    throw new IllegalStateException("Duplicates keep being inserted, stop listings and start the migration again");
+                }
+                mergeDuplicates();
+            } while (!attributeService.ensureIndex());
+
+            mongoTemplate.updateFirst(query(where("_id").is(MERGE_DUPLICATES)),
+                    new Update().set("state", DONE).set("finished_at", new Date()), Migration.class);
+            log.info("Migration {} done", MERGE_DUPLICATES);
+        } catch (Exception e) {
+            log.error("Migration {} failed", MERGE_DUPLICATES, e);
+            mongoTemplate.remove(query(where("_id").is(MERGE_DUPLICATES)), Migration.class);
+        }
+    }
+
+    // Keeps the oldest attribute of every parent_collection/trait_type/value, points tokens at it and deletes the others
+    private void mergeDuplicates() {
+        Aggregation duplicates = Aggregation.newAggregation(
+                Aggregation.group("parent_collection", "trait_type", "value").push("_id").as("ids").count().as("count"),
+                Aggregation.match(where("count").gt(1))
+        ).withOptions(AggregationOptions.builder().allowDiskUse(true).build());
+
+        Map<ObjectId, ObjectId> replacements = new HashMap<>();
+        String attributes = mongoTemplate.getCollectionName(Attribute.class);
+        for (Document group : mongoTemplate.aggregate(duplicates, attributes, Document.class)) {
+            List<ObjectId> ids = new ArrayList<>(group.getList("ids", ObjectId.class));
+            Collections.sort(ids);
+            ids.subList(1, ids.size()).forEach(id -> replacements.put(id, ids.get(0)));
+        }
+        if (replacements.isEmpty()) {
+            return;
+        }
+        log.info("Merging {} duplicate attributes", replacements.size());
+
+        List<ObjectId> duplicateIds = new ArrayList<>(replacements.keySet());
+        for (int from = 0; from < duplicateIds.size(); from += MIGRATION_BATCH_SIZE) {
+            List<ObjectId> batch = duplicateIds.subList(from, Math.min(from + MIGRATION_BATCH_SIZE, duplicateIds.size()));
+            Query tokens = query(where("attributes").in(batch));
+            tokens.fields().include("attributes").include("traits");
+
+            BulkOperations ops = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, Token.class);
+            int updates = 0;
+            for (Token token : mongoTemplate.find(tokens, Token.class)) {
+                Update update = new Update().set("attributes", token.getAttributes().stream()
+                        .map(id -> replacements.getOrDefault(id, id))
+                        .distinct()
+                        .toList());
+                if (token.getTraits() != null) {
+                    Map<ObjectId, TokenTrait> traits = new LinkedHashMap<>();
+                    token.getTraits().forEach(trait -> {
+                        ObjectId id = replacements.getOrDefault(trait.getAttribute(), trait.getAttribute());
+                        traits.putIfAbsent(id, new TokenTrait(trait.getTraitType(), trait.getValue(), id));
+                    });
+                    update.set("traits", new ArrayList<>(traits.values()));
+                }
+                ops.updateOne(query(where("_id").is(new ObjectId(token.getId()))), update);
+                updates++;
+            }
+            if (updates > 0) {
+                ops.execute();
+            }
+            mongoTemplate.remove(query(where("_id").in(batch)), Attribute.class);
+        }
+    }
+}
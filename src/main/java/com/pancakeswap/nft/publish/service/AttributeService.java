@@ -0,0 +1,153 @@
+package com.pancakeswap.nft.publish.service;
+
+import com.pancakeswap.nft.publish.exception.ListingException;
+import com.pancakeswap.nft.publish.model.dto.AbstractTokenDto;
+import com.pancakeswap.nft.publish.model.dto.AttributeDto;
+import com.pancakeswap.nft.publish.model.dto.TokenDataFormattedDto;
+import com.pancakeswap.nft.publish.model.dto.TokenDataNoFormattedDto;
+import com.pancakeswap.nft.publish.model.entity.Attribute;
+import com.pancakeswap.nft.publish.model.entity.TokenTrait;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.types.ObjectId;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+import static org.springframework.data.mongodb.core.query.Query.query;
+
+// Attribute ids of collections being listed. A collection dictionary is loaded with one query on first use
+// and dropped when the job ends, a missing trait/value is upserted and the unique index settles concurrent inserts.
+// Duplicates left by older writers keep the index from being built until AttributeMigration merged them.
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class AttributeService {
+
+    private final MongoTemplate mongoTemplate;
+
+    private final Map<String, Map<AttributeKey, ObjectId>> dictionaries = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void init() {
+        if (!ensureIndex()) {
+            log.error("Unique attributes index is missing, merge the duplicate attributes with POST /migrations/attributes");
+        }
+    }
+
+    // upserts rely on the index to never insert a trait/value twice
+    public boolean ensureIndex() {
+        try {
+            mongoTemplate.indexOps(Attribute.class).ensureIndex(new Index()
+                    .on("parent_collection", Sort.Direction.ASC)
+                    .on("trait_type", Sort.Direction.ASC)
+                    .on("value", Sort.Direction.ASC)
+                    .unique());
+            return true;
+        } catch (Exception e) {
+            log.warn("Can not ensure unique attributes parent_collection/trait_type/value index: {}", e.getMessage());
+            return false;
+        }
+    }
+
+    public static List<AttributeDto> attributesOf(AbstractTokenDto tokenDataDto) {
+        if (tokenDataDto instanceof TokenDataFormattedDto dto) {
+            return dto.getAttributes() != null ? dto.getAttributes() : List.of();
+        } else {
+            TokenDataNoFormattedDto dto = (TokenDataNoFormattedDto) tokenDataDto;
+            return dto.getAttributes().entrySet().stream().map(e -> new AttributeDto(e.getKey(), e.getValue())).collect(Collectors.toList());
+        }
+    }
+
+    // Attributes with their ids, one per id in the order given
+    public List<TokenTrait> storeTraits(String collectionId, List<AttributeDto> attributes) {
+        Map<AttributeKey, ObjectId> dictionary = dictionary(collectionId);
+        Map<ObjectId, TokenTrait> traits = new LinkedHashMap<>();
+        for (AttributeDto attribute : attributes) {
+            ObjectId id = idOf(collectionId, dictionary, attribute);
+            traits.putIfAbsent(id, new TokenTrait(attribute.getTraitType(), attribute.getValue(), id));
+        }
+        return new ArrayList<>(traits.values());
+    }
+
+    public ObjectId storeAttribute(String collectionId, AttributeDto attribute) {
+        return idOf(collectionId, dictionary(collectionId), attribute);
+    }
+
+    public void evict(String collectionId) {
+        dictionaries.remove(collectionId);
+    }
+
+    // loaded outside of the map, concurrent first uses may both query and the first one stored wins
+    private Map<AttributeKey, ObjectId> dictionary(String collectionId) {
+        Map<AttributeKey, ObjectId> dictionary = dictionaries.get(collectionId);
+        if (dictionary == null) {
+            Map<AttributeKey, ObjectId> loaded = load(collectionId);
+            dictionary = dictionaries.putIfAbsent(collectionId, loaded);
+            if (dictionary == null) {
+                dictionary = loaded;
+            }
+        }
+        return dictionary;
+    }
+
+    private Map<AttributeKey, ObjectId> load(String collectionId) {
+        Query attributes = query(where("parent_collection").is(new ObjectId(collectionId)));
+        attributes.fields().include("trait_type").include("value");
+
+        Map<AttributeKey, ObjectId> dictionary = new ConcurrentHashMap<>();
+        mongoTemplate.find(attributes, Attribute.class)
+                .forEach(a -> dictionary.putIfAbsent(new AttributeKey(a.getTraitType(), a.getValue()), new ObjectId(a.getId())));
+        return dictionary;
+    }
+
+    private ObjectId idOf(String collectionId, Map<AttributeKey, ObjectId> dictionary, AttributeDto attribute) {
+        if (attribute.getTraitType() == null || attribute.getValue() == null) {
+            throw new ListingException("attribute trait_type and value cant not be null");
+        }
+        AttributeKey key = new AttributeKey(attribute.getTraitType(), attribute.getValue());
+        ObjectId id = dictionary.get(key);
+        if (id == null) {
+            ObjectId upserted = upsert(collectionId, key);
+            id = dictionary.putIfAbsent(key, upserted);
+            if (id == null) {
+                id = upserted;
+            }
+        }
+        return id;
+    }
+
+    private ObjectId upsert(String collectionId, AttributeKey key) {
+        Query attribute = query(where("parent_collection").is(new ObjectId(collectionId))
+                .and("trait_type").is(key.traitType())
+                .and("value").is(key.value()));
+        Update insert = new Update()
+                .setOnInsert("created_at", new Date())
+                .setOnInsert("updated_at", new Date());
+        try {
+            return new ObjectId(mongoTemplate.findAndModify(attribute, insert,
+                    FindAndModifyOptions.options().upsert(true).returnNew(true), Attribute.class).getId());
+        } catch (DuplicateKeyException e) {
+            // another instance inserted the same trait/value concurrently
+            return new ObjectId(mongoTemplate.findOne(attribute, Attribute.class).getId());
+        }
+    }
+
+    private record AttributeKey(String traitType, String value) {
+    }
+}
@@ -1,35 +1,72 @@
 package com.pancakeswap.nft.publish.service;
 
+import com.pancakeswap.nft.publish.model.sc.LogField;
 import com.pancakeswap.nft.publish.model.sc.NftInfo;
+import com.pancakeswap.nft.publish.model.sc.TransferEvent;
+import com.pancakeswap.nft.publish.model.sc.TransferFilter;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import org.web3j.abi.EventEncoder;
 import org.web3j.abi.FunctionEncoder;
 import org.web3j.abi.FunctionReturnDecoder;
 import org.web3j.abi.TypeReference;
+import org.web3j.abi.datatypes.Address;
+import org.web3j.abi.datatypes.Event;
 import org.web3j.abi.datatypes.Function;
 import org.web3j.abi.datatypes.Type;
 import org.web3j.abi.datatypes.Uint;
 import org.web3j.abi.datatypes.Utf8String;
+import org.web3j.abi.datatypes.generated.Uint256;
 import org.web3j.protocol.Web3j;
-import org.web3j.protocol.core.DefaultBlockParameterName;
-import org.web3j.protocol.core.methods.request.Transaction;
-import org.web3j.protocol.core.methods.response.EthCall;
+import org.web3j.protocol.core.DefaultBlockParameter;
+import org.web3j.protocol.core.methods.request.EthFilter;
+import org.web3j.protocol.core.methods.response.EthBlockNumber;
+import org.web3j.protocol.core.methods.response.EthLog;
+import org.web3j.protocol.core.methods.response.Log;
 import org.web3j.protocol.http.HttpService;
+import org.web3j.utils.Numeric;
 
 import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
 import java.math.BigInteger;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Locale;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
 
 @Service
 public class BlockChainService {
 
+    private static final String TRANSFER_TOPIC = EventEncoder.encode(new Event("Transfer", List.of(
+            new TypeReference<Address>(true) {
+            },
+            new TypeReference<Address>(true) {
+            },
+            new TypeReference<Uint256>(true) {
+            })));
+    private static final String ZERO_ADDRESS_TOPIC = Numeric.toHexStringWithPrefixZeroPadded(BigInteger.ZERO, 64);
+
     @Value("${wallet.address}")
     private String walletAddress;
     @Value("${node.url}")
     private String nodeUrl;
+    @Value("${node.batch.size:100}")
+    private Integer batchSize;
+    @Value("${node.batch.flush.interval:20}")
+    private Long batchFlushInterval;
+    @Value("${node.batch.max.in.flight:4}")
+    private Integer maxBatchesInFlight;
+    @Value("${node.multicall.enabled:false}")
+    private Boolean multicallEnabled;
+    @Value("${node.multicall.address:0xcA11bde05977b3631167028862bE2a173976CA11}")
+    private String multicallAddress;
+    @Value("${node.multicall.size:200}")
+    private Integer multicallSize;
     private Web3j web3j;
+    private EthCallBatcher batcher;
 
     public BlockChainService() {
     }
@@ -37,6 +74,21 @@ public class BlockChainService {
     @PostConstruct
     public void afterInit() {
         this.web3j = Web3j.build(new HttpService(nodeUrl));
+        if (multicallEnabled) {
+            this.batchSize = multicallSize;
+        }
+        this.batcher = new EthCallBatcher(web3j, walletAddress, multicallEnabled ? multicallAddress : null,
+                batchSize, batchFlushInterval, maxBatchesInFlight);
+    }
+
+    @PreDestroy
+    public void beforeDestroy() {
+        batcher.shutdown();
+        web3j.shutdown();
+    }
+
+    public int getBatchSize() {
+        return batchSize;
     }
 
     public BigInteger getTotalSupply(String collectionAddress) throws ExecutionException, InterruptedException {
@@ -46,56 +98,61 @@ public class BlockChainService {
                 List.of(new TypeReference<Uint>() {
                 }));
 
-        List<Type> res = callBlockchainFunction(collectionAddress, function);
-        if (res.isEmpty()) {
-            throw new RuntimeException("Decoded response is empty");
-        }
-        return (BigInteger) res.get(0).getValue();
+        return callBlockchainFunction(collectionAddress, function).thenApply(BlockChainService::firstUint).get();
     }
 
     public BigInteger getTokenId(String collectionAddress, Integer index) throws ExecutionException, InterruptedException {
+        return getTokenIdAsync(collectionAddress, index).get();
+    }
+
+    public CompletableFuture<BigInteger> getTokenIdAsync(String collectionAddress, Integer index) {
         Function function = new Function(
                 "tokenByIndex",
                 List.of(new Uint(BigInteger.valueOf(index))),
                 List.of(new TypeReference<Uint>() {
                 }));
 
-        List<Type> res = callBlockchainFunction(collectionAddress, function);
-        if (res.isEmpty()) {
-            throw new RuntimeException("Decoded response is empty");
-        }
-        return (BigInteger) res.get(0).getValue();
+        return callBlockchainFunction(collectionAddress, function).thenApply(BlockChainService::firstUint);
     }
 
     public BigInteger getBunnyId(String collectionAddress, BigInteger index) throws ExecutionException, InterruptedException {
+        return getBunnyIdAsync(collectionAddress, index).get();
+    }
+
+    public CompletableFuture<BigInteger> getBunnyIdAsync(String collectionAddress, BigInteger index) {
         Function function = new Function(
                 "getBunnyId",
                 List.of(new Uint(index)),
                 List.of(new TypeReference<Uint>() {
                 }));
 
-        List<Type> res = callBlockchainFunction(collectionAddress, function);
-        if (res.isEmpty()) {
-            throw new RuntimeException("Decoded response is empty");
-        }
-        return (BigInteger) res.get(0).getValue();
+        return callBlockchainFunction(collectionAddress, function).thenApply(BlockChainService::firstUint);
     }
 
     public String getTokenURI(String collectionAddress, BigInteger index) throws ExecutionException, InterruptedException {
+        return getTokenURIAsync(collectionAddress, index).get();
+    }
+
+    public CompletableFuture<String> getTokenURIAsync(String collectionAddress, BigInteger index) {
         Function function = new Function(
                 "tokenURI",
                 List.of(new Uint(index)),
                 List.of(new TypeReference<Utf8String>() {
                 }));
 
-        List<Type> res = callBlockchainFunction(collectionAddress, function);
-        if (res.isEmpty()) {
-            throw new RuntimeException("Decoded response is empty");
-        }
-        return (String) res.get(0).getValue();
+        return callBlockchainFunction(collectionAddress, function).thenApply(res -> {
+            if (res.isEmpty()) {
+                throw new RuntimeException("Decoded response is empty");
+            }
+            return (String) res.get(0).getValue();
+        });
     }
 
     public NftInfo getNftInfo(String collectionAddress, BigInteger tokenId) throws ExecutionException, InterruptedException {
+        return getNftInfoAsync(collectionAddress, tokenId).get();
+    }
+
+    public CompletableFuture<NftInfo> getNftInfoAsync(String collectionAddress, BigInteger tokenId) {
         Function function = new Function("getNftInfo",
                 List.of(new Uint(tokenId)),
                 List.of(new TypeReference<Uint>() {
@@ -103,15 +160,16 @@ public class BlockChainService {
                 }, new TypeReference<Uint>() {
                 }));
 
-        List<Type> response = callBlockchainFunction(collectionAddress, function);
-        if (response.size() != 3) {
-            throw new RuntimeException("Decoded response is empty");
-        }
+        return callBlockchainFunction(collectionAddress, function).thenApply(response -> {
+            if (response.size() != 3) {
+                throw new RuntimeException("Decoded response is empty");
+            }
 
-        return new NftInfo(
-                (BigInteger) response.get(0).getValue(),
-                (BigInteger) response.get(1).getValue(),
-                (BigInteger) response.get(2).getValue());
+            return new NftInfo(
+                    (BigInteger) response.get(0).getValue(),
+                    (BigInteger) response.get(1).getValue(),
+                    (BigInteger) response.get(2).getValue());
+        });
     }
 
     public BigInteger getLastTokenId(String collectionAddress) throws ExecutionException, InterruptedException {
@@ -121,22 +179,97 @@ public class BlockChainService {
                 List.of(new TypeReference<Uint>() {
                 }));
 
-        List<Type> res = callBlockchainFunction(collectionAddress, function);
-        if (res.isEmpty()) {
-            throw new RuntimeException("Decoded response is empty");
+        return callBlockchainFunction(collectionAddress, function).thenApply(BlockChainService::firstUint).get();
+    }
+
+    public BigInteger getBlockNumber() throws IOException {
+        EthBlockNumber response = web3j.ethBlockNumber().send();
+        if (response.hasError()) {
+            throw new IOException(response.getError().getMessage());
         }
-        return (BigInteger) res.get(0).getValue();
+        return response.getBlockNumber();
+    }
+
+    // ERC-721 Transfer logs of the collection in the block range, mints and burns are filtered by the node
+    public List<TransferEvent> getTransferEvents(String collectionAddress, BigInteger fromBlock, BigInteger toBlock, TransferFilter transferFilter) throws IOException {
+        EthFilter filter = new EthFilter(DefaultBlockParameter.valueOf(fromBlock), DefaultBlockParameter.valueOf(toBlock), collectionAddress);
+        filter.addSingleTopic(TRANSFER_TOPIC);
+        switch (transferFilter) {
+            case MINTS -> filter.addSingleTopic(ZERO_ADDRESS_TOPIC);
+            case BURNS -> filter.addNullTopic().addSingleTopic(ZERO_ADDRESS_TOPIC);
+            case ALL -> {
+            }
+        }
+        EthLog response = web3j.ethGetLogs(filter).send();
+        if (response.hasError()) {
+            throw new IOException(response.getError().getMessage());
+        }
+
+        List<TransferEvent> events = new ArrayList<>();
+        for (EthLog.LogResult<?> result : response.getLogs()) {
+            Log event = (Log) result.get();
+            List<String> topics = event.getTopics();
+            // ERC-20 transfers share the signature but don't index the third argument
+            if (topics.size() != 4 || event.isRemoved()) {
+                continue;
+            }
+            events.add(new TransferEvent(topicAddress(topics.get(1)), topicAddress(topics.get(2)),
+                    Numeric.toBigInt(topics.get(3)), event.getBlockNumber(), event.getLogIndex()));
+        }
+        return events;
     }
 
-    private List<Type> callBlockchainFunction(String collectionAddress, Function function) throws ExecutionException, InterruptedException {
+    /**
+     * Values of a uint argument of one event in the logs of the contract in the block range. The event is given
+     * by its signature, e.g. {@code LevelUp(uint256,uint256)}, and selected by the node on its topic. A log
+     * missing the field (another event with the same signature but other indexing) is skipped.
+     */
+    public List<BigInteger> getEventValues(String contractAddress, String eventSignature, LogField field, BigInteger fromBlock, BigInteger toBlock) throws IOException {
+        EthFilter filter = new EthFilter(DefaultBlockParameter.valueOf(fromBlock), DefaultBlockParameter.valueOf(toBlock), contractAddress);
+        filter.addSingleTopic(EventEncoder.buildEventSignature(eventSignature));
+        EthLog response = web3j.ethGetLogs(filter).send();
+        if (response.hasError()) {
+            throw new IOException(response.getError().getMessage());
+        }
+
+        List<BigInteger> values = new ArrayList<>();
+        for (EthLog.LogResult<?> result : response.getLogs()) {
+            Log event = (Log) result.get();
+            if (event.isRemoved()) {
+                continue;
+            }
+            if (field.indexed()) {
+                if (event.getTopics().size() > field.position()) {
+                    values.add(Numeric.toBigInt(event.getTopics().get(field.position())));
+                }
+            } else {
+                String data = Numeric.cleanHexPrefix(event.getData() != null ? event.getData() : "");
+                int word = field.position() * 64;
+                if (data.length() >= word + 64) {
+                    values.add(new BigInteger(data.substring(word, word + 64), 16));
+                }
+            }
+        }
+        return values;
+    }
+
+    private static String topicAddress(String topic) {
+        String hex = Numeric.cleanHexPrefix(topic);
+        return "0x" + hex.substring(hex.length() - 40).toLowerCase(Locale.ROOT);
+    }
+
+    private CompletableFuture<List<Type>> callBlockchainFunction(String collectionAddress, Function function) {
         String encodedFunction = FunctionEncoder.encode(function);
-        EthCall response = web3j.ethCall(
-                        Transaction.createEthCallTransaction(walletAddress, collectionAddress, encodedFunction),
-                        DefaultBlockParameterName.LATEST)
-                .sendAsync().get();
 
-        return FunctionReturnDecoder.decode(
-                response.getValue(), function.getOutputParameters());
+        return batcher.call(collectionAddress, encodedFunction)
+                .thenApply(value -> FunctionReturnDecoder.decode(value, function.getOutputParameters()));
+    }
+
+    private static BigInteger firstUint(List<Type> res) {
+        if (res.isEmpty()) {
+            throw new RuntimeException("Decoded response is empty");
+        }
+        return (BigInteger) res.get(0).getValue();
     }
 
 }
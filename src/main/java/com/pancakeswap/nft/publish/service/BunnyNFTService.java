@@ -1,23 +1,25 @@
 package com.pancakeswap.nft.publish.service;
 
 import com.pancakeswap.nft.publish.config.FutureConfig;
+import com.pancakeswap.nft.publish.config.ListingExecutor;
 import com.pancakeswap.nft.publish.model.dto.AbstractTokenDto;
 import com.pancakeswap.nft.publish.model.dto.collection.CollectionDataDto;
 import com.pancakeswap.nft.publish.model.dto.collection.ListCollectionTokenParams;
 import com.pancakeswap.nft.publish.model.entity.Collection;
 import com.pancakeswap.nft.publish.service.cache.CacheService;
+import com.pancakeswap.nft.publish.service.cache.TokenResponseCache;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Service;
 
 import java.math.BigInteger;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.atomic.AtomicInteger;
 
-import static com.pancakeswap.nft.publish.util.FutureUtils.waitFutureRequestFinished;
+import static com.pancakeswap.nft.publish.config.ListingStage.STORE;
 import static com.pancakeswap.nft.publish.util.GsonUtil.parseBody;
 import static com.pancakeswap.nft.publish.util.UrlUtil.getIpfsFormattedUrl;
 
@@ -32,8 +34,11 @@ public class BunnyNFTService extends AbstractNFTService {
             BlockChainService blockChainService,
             TokenDataService tokenDataService,
             ImageService imageService,
-            DBService dbService, CacheService cacheService) {
-        super(imageService, dbService, tokenDataService, blockChainService, cacheService);
+            DBService dbService,
+            CacheService cacheService,
+            ListingExecutor listingExecutor,
+            TokenResponseCache tokenResponseCache) {
+        super(imageService, dbService, tokenDataService, blockChainService, cacheService, listingExecutor, tokenResponseCache);
     }
 
     @Async
@@ -50,7 +55,7 @@ public class BunnyNFTService extends AbstractNFTService {
         log.info("Fetching tokens for collection: {} started", collectionAddress);
         int lastAddedBunnyId = 27;
 
-        FutureConfig config = FutureConfig.init();
+        FutureConfig config = listingExecutor.newJob();
 
         BigInteger totalSupply = blockChainService.getTotalSupply(collectionAddress);
         Collection collection = dbService.getCollection(collectionAddress);
@@ -58,28 +63,41 @@ public class BunnyNFTService extends AbstractNFTService {
         log.info("Collection: {}. totalSupply - {}, lastAddedBunnyId - {}, lastIndex - {}",
                 collection.getId(), totalSupply.intValue(), lastAddedBunnyId, lastIndex);
 
-        for (int i = lastIndex; i < totalSupply.intValue(); i++) {
-            BigInteger tokenId = null;
-            BigInteger bunnyID;
-            try {
-                tokenId = blockChainService.getTokenId(collectionAddress, i);
-                bunnyID = blockChainService.getBunnyId(collectionAddress, tokenId);
-                ListCollectionTokenParams params = new ListCollectionTokenParams(collection.getId(), collection.getAddress());
+        for (int from = lastIndex; from < totalSupply.intValue(); from += blockChainService.getBatchSize()) {
+            int to = Math.min(from + blockChainService.getBatchSize(), totalSupply.intValue());
+            List<CompletableFuture<BigInteger>> tokenIds = new ArrayList<>();
+            List<CompletableFuture<BigInteger>> bunnyIds = new ArrayList<>();
+            for (int i = from; i < to; i++) {
+                CompletableFuture<BigInteger> tokenId = blockChainService.getTokenIdAsync(collectionAddress, i);
+                tokenIds.add(tokenId);
+                bunnyIds.add(tokenId.thenCompose(id -> blockChainService.getBunnyIdAsync(collectionAddress, id)));
+            }
 
-                params.setTokenId(tokenId.toString());
-                if (bunnyID.intValue() > lastAddedBunnyId) {
-                    loadAndStoreTokenDataAsync(config, params, new AtomicInteger(0));
-                    lastAddedBunnyId = bunnyID.intValue();
-                }
-            } catch (Exception e) {
-                if (tokenId != null) {
-                    config.addFailedTokenId(tokenId.toString());
+            for (int i = from; i < to; i++) {
+                BigInteger tokenId = null;
+                BigInteger bunnyID;
+                try {
+                    tokenId = tokenIds.get(i - from).get();
+                    bunnyID = bunnyIds.get(i - from).get();
+                    ListCollectionTokenParams params = new ListCollectionTokenParams(collection.getId(), collection.getAddress());
+
+                    params.setTokenId(tokenId.toString());
+                    if (bunnyID.intValue() > lastAddedBunnyId) {
+                        loadAndStoreTokenDataAsync(config, params);
+                        lastAddedBunnyId = bunnyID.intValue();
+                    }
+                } catch (Exception e) {
+                    if (tokenId != null) {
+                        config.addFailedTokenId(tokenId.toString());
+                    }
+                    log.error("Failed to store token index: {}, id: {}, collectionId: {}", i, tokenId, collection.getId(), e);
                 }
-                log.error("Failed to store token index: {}, id: {}, collectionId: {}", i, tokenId, collection.getId(), e);
             }
         }
 
-        waitFutureRequestFinished(config);
+        config.awaitCompletion();
+        dbService.evictAttributes(collection.getId());
+        imageService.releaseCollection(collectionAddress);
         log.info("Fetching tokens for collection: {} finished. LastIndex - {}, lastAddedBunnyId - {}",
                 collectionAddress, totalSupply.intValue() - 1, lastAddedBunnyId);
         return CompletableFuture.completedFuture(true);
@@ -87,7 +105,7 @@ public class BunnyNFTService extends AbstractNFTService {
 
     @Deprecated
     public void listNFT(CollectionDataDto dataDto) throws ExecutionException, InterruptedException {
-        FutureConfig config = FutureConfig.init();
+        FutureConfig config = listingExecutor.newJob();
 
         BigInteger totalSupply = blockChainService.getTotalSupply(dataDto.getAddress());
         Collection collection = dbService.getCollection(dataDto.getAddress());
@@ -100,7 +118,7 @@ public class BunnyNFTService extends AbstractNFTService {
                 ListCollectionTokenParams params = new ListCollectionTokenParams(collection.getId(), collection.getAddress());
                 params.setTokenId(tokenId.toString());
 
-                loadAndStoreTokenDataAsync(config, params, new AtomicInteger(0));
+                loadAndStoreTokenDataAsync(config, params);
             } catch (Exception e) {
                 if (tokenId != null) {
                     config.addFailedTokenId(tokenId.toString());
@@ -109,12 +127,12 @@ public class BunnyNFTService extends AbstractNFTService {
             }
         }
 
-        waitFutureRequestFinished(config);
+        config.awaitCompletion();
     }
 
     @Deprecated
     public void relistNftByIndex(String collectionAddress, List<Integer> tokenIds) {
-        FutureConfig config = FutureConfig.init();
+        FutureConfig config = listingExecutor.newJob();
 
         Collection collection = dbService.getCollection(collectionAddress);
 
@@ -130,12 +148,12 @@ public class BunnyNFTService extends AbstractNFTService {
                 params.setTokenId(tokenId.toString());
                 params.setTokenUrl(url);
 
-                loadAndStoreTokenDataAsync(config, params, new AtomicInteger(0));
+                loadAndStoreTokenDataAsync(config, params);
             } catch (Exception e) {
                 log.error("Failed to store token id: {}, url: {}, collectionId: {}", tokenId, url, collection.getId(), e);
             }
         });
-        waitFutureRequestFinished(config);
+        config.awaitCompletion();
     }
 
     @Override
@@ -151,7 +169,7 @@ public class BunnyNFTService extends AbstractNFTService {
     }
 
     private void storeBunnyTokenData(FutureConfig config, String collectionId, AbstractTokenDto tokenData) {
-        config.addFuture(
+        config.addFuture(STORE,
                 () -> {
                     try {
                         dbService.storeBunnyToken(collectionId, tokenData);
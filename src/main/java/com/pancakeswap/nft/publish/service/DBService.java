@@ -1,22 +1,22 @@
 package com.pancakeswap.nft.publish.service;
 
+import com.pancakeswap.nft.publish.config.Downstream;
+import com.pancakeswap.nft.publish.config.DownstreamLimiter;
 import com.pancakeswap.nft.publish.model.dto.AbstractTokenDto;
-import com.pancakeswap.nft.publish.model.dto.AttributeDto;
-import com.pancakeswap.nft.publish.model.dto.TokenDataFormattedDto;
-import com.pancakeswap.nft.publish.model.dto.TokenDataNoFormattedDto;
 import com.pancakeswap.nft.publish.model.dto.collection.CollectionDataDto;
 import com.pancakeswap.nft.publish.model.entity.Collection;
 import com.pancakeswap.nft.publish.model.entity.*;
 import com.pancakeswap.nft.publish.repository.*;
 import lombok.RequiredArgsConstructor;
 import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
-import java.util.*;
-import java.util.stream.Collectors;
-
-import static org.springframework.transaction.annotation.Isolation.REPEATABLE_READ;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
 
 @Service
 @RequiredArgsConstructor
@@ -26,8 +26,12 @@ public class DBService {
     private final TokenRepository tokenRepository;
     private final MetadataRepository metadataRepository;
     private final CollectionInfoRepository collectionInfoRepository;
+    private final DownstreamLimiter downstreamLimiter;
+    private final AttributeService attributeService;
+    private final TokenBulkWriter tokenBulkWriter;
 
-    private final Map<String, String> attributesMapCache = Collections.synchronizedMap(new HashMap<>());
+    @Value("${nft.tokens.traits.enabled:false}")
+    private Boolean traitsEnabled;
 
     public Collection getCollection(String collectionAddress) {
         return collectionRepository.findByAddress(collectionAddress.toLowerCase(Locale.ROOT));
@@ -61,48 +65,37 @@ public class DBService {
                 .onlyGif(dataDto.getOnlyGif())
                 .type(dataDto.getType())
                 .isCron(dataDto.getIsCron())
+                .imageSizes(dataDto.getImageSizes())
+                .imageFormat(dataDto.getImageFormat())
                 .createdAt(new Date()).updatedAt(new Date()).build();
         collectionInfoRepository.save(info);
 
         return collection;
     }
 
+    public CollectionInfo getCollectionInfo(String collectionId) {
+        return collectionInfoRepository.findByCollectionId(new ObjectId(collectionId));
+    }
+
     public void storeFailedIds(String collectionId, String ids) {
         CollectionInfo info = collectionInfoRepository.findByCollectionId(new ObjectId(collectionId));
         info.setFailedIds(ids);
         collectionInfoRepository.save(info);
     }
 
-    @Transactional(isolation = REPEATABLE_READ)
-    public <T extends AbstractTokenDto> void storeToken(String collectionId, T tokenDataDto) {
-        List<ObjectId> attributes = getAttributes(collectionId, tokenDataDto);
-        Token token = findToken(collectionId, tokenDataDto.getTokenId());
-
-        if (token.getMetadata() == null) {
-            Metadata metadata = storeMetadata(tokenDataDto, collectionId);
-            token.setMetadata(new ObjectId(metadata.getId()));
-        } else {
-            metadataRepository.findById(token.getMetadata().toString()).ifPresent((meta) -> {
-                meta.setName(tokenDataDto.getName());
-                meta.setDescription(tokenDataDto.getDescription());
-                meta.setGif(Boolean.TRUE.equals(tokenDataDto.getIsGif()));
-                meta.setMp4(Boolean.TRUE.equals(tokenDataDto.getIsMp4()));
-                meta.setWebm(Boolean.TRUE.equals(tokenDataDto.getIsWebm()));
-                meta.setUpdatedAt(new Date());
-                metadataRepository.save(meta);
-            });
-        }
-
-        token.setTokenId(tokenDataDto.getTokenId());
-        token.setBurned(false);
-        token.setAttributes(attributes);
-
-        tokenRepository.save(token);
+    public <T extends AbstractTokenDto> CompletableFuture<Void> storeToken(String collectionId, T tokenDataDto) {
+        return tokenBulkWriter.store(collectionId, tokenDataDto);
     }
 
     @Transactional
     public <T extends AbstractTokenDto> void storeBunnyToken(String collectionId, T tokenDataDto) {
-        List<ObjectId> attributes = getAttributes(collectionId, tokenDataDto);
+        try (DownstreamLimiter.Permit ignore = downstreamLimiter.acquire(Downstream.MONGO)) {
+            doStoreBunnyToken(collectionId, tokenDataDto);
+        }
+    }
+
+    private <T extends AbstractTokenDto> void doStoreBunnyToken(String collectionId, T tokenDataDto) {
+        List<TokenTrait> traits = attributeService.storeTraits(collectionId, AttributeService.attributesOf(tokenDataDto));
         Token token = findToken(collectionId, tokenDataDto.getTokenId());
 
         if (token.getMetadata() == null) {
@@ -113,21 +106,12 @@ public class DBService {
 
         token.setTokenId(tokenDataDto.getTokenId());
         token.setBurned(Boolean.TRUE.equals(token.getBurned()));
-        token.setAttributes(attributes);
+        token.setAttributes(traits.stream().map(TokenTrait::getAttribute).toList());
+        token.setTraits(traitsEnabled ? traits : null);
 
         tokenRepository.save(token);
     }
 
-    private <T extends AbstractTokenDto> List<ObjectId> getAttributes(String collectionId, T tokenDataDto) {
-        if (tokenDataDto instanceof TokenDataFormattedDto) {
-            TokenDataFormattedDto dto = (TokenDataFormattedDto) tokenDataDto;
-            return storeAttributes(collectionId, dto.getAttributes());
-        } else {
-            TokenDataNoFormattedDto dto = (TokenDataNoFormattedDto) tokenDataDto;
-            return storeAttributes(collectionId, dto.getAttributes().entrySet().stream().map(e -> new AttributeDto(e.getKey(), e.getValue())).collect(Collectors.toList()));
-        }
-    }
-
     private Token findToken(String collectionId, String tokenId) {
         Token token = tokenRepository.findByParentCollectionAndTokenId(new ObjectId(collectionId), tokenId);
         if (token == null) {
@@ -139,6 +123,10 @@ public class DBService {
         return token;
     }
 
+    public void evictAttributes(String collectionId) {
+        attributeService.evict(collectionId);
+    }
+
     @Transactional
     public void deleteCollection(String id) {
         tokenRepository.deleteAllByParentCollection(new ObjectId(id));
@@ -148,49 +136,7 @@ public class DBService {
         collectionInfoRepository.deleteByCollectionId(new ObjectId(id));
 
         collectionRepository.deleteById(id);
-    }
-
-    private List<ObjectId> storeAttributes(String collectionId, List<AttributeDto> attributes) {
-        synchronized (attributesMapCache) {
-
-            List<ObjectId> existed = new ArrayList<>();
-
-            List<AttributeDto> toStore = attributes.stream().filter(item -> {
-                String id = attributesMapCache.get(String.format("%s-%s-%s", collectionId, item.getTraitType(), item.getValue()));
-                if (id != null) {
-                    existed.add(new ObjectId(id));
-                    return false;
-                } else {
-                    Optional<Attribute> attr = attributeRepository.findByParentCollectionAndTraitTypeAndValue(new ObjectId(collectionId), item.getTraitType(), item.getValue());
-                    attr.ifPresent((a) -> {
-                        attributesMapCache.put(String.format("%s-%s-%s", collectionId, a.getTraitType(), a.getValue()), a.getId());
-                        existed.add(new ObjectId(a.getId()));
-                    });
-
-                    return attr.isEmpty();
-                }
-            }).toList();
-
-            List<Attribute> entities = toStore.stream().map(attributeDto -> {
-                Attribute attribute = new Attribute();
-                attribute.setParentCollection(new ObjectId(collectionId));
-                attribute.setTraitType(attributeDto.getTraitType());
-                attribute.setValue(attributeDto.getValue());
-
-                attribute.setCreatedAt(new Date());
-                attribute.setUpdatedAt(new Date());
-
-                return attribute;
-            }).collect(Collectors.toList());
-
-            if (entities.size() > 0) {
-                List<Attribute> stored = attributeRepository.saveAll(entities);
-                stored.forEach(a -> attributesMapCache.put(String.format("%s-%s-%s", collectionId, a.getTraitType(), a.getValue()), a.getId()));
-                existed.addAll(stored.stream().map(a -> new ObjectId(a.getId())).toList());
-            }
-
-            return existed;
-        }
+        attributeService.evict(id);
     }
 
     private Metadata storeMetadata(AbstractTokenDto dto, String parentId) {
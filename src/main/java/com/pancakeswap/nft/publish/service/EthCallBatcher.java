@@ -0,0 +1,166 @@
+package com.pancakeswap.nft.publish.service;
+
+import com.pancakeswap.nft.publish.util.MulticallUtil;
+import lombok.extern.slf4j.Slf4j;
+import org.web3j.protocol.Web3j;
+import org.web3j.protocol.core.BatchRequest;
+import org.web3j.protocol.core.DefaultBlockParameterName;
+import org.web3j.protocol.core.Request;
+import org.web3j.protocol.core.Response;
+import org.web3j.protocol.core.methods.request.Transaction;
+import org.web3j.protocol.core.methods.response.EthCall;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+
+// Groups pending eth_call requests into JSON-RPC batches, flushed by size or by interval.
+// With a multicall address set, every batch is packed into a single Multicall3 aggregate3 eth_call instead.
+@Slf4j
+public class EthCallBatcher {
+
+    private final Web3j web3j;
+    private final String walletAddress;
+    private final String multicallAddress;
+    private final int batchSize;
+    private final Semaphore batchesInFlight;
+
+    private final BlockingQueue<PendingCall> pending = new LinkedBlockingQueue<>();
+    private final AtomicBoolean flushRequested = new AtomicBoolean(false);
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "eth-call-batcher");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public EthCallBatcher(Web3j web3j, String walletAddress, String multicallAddress,
+                          int batchSize, long flushInterval, int maxBatchesInFlight) {
+        this.web3j = web3j;
+        this.walletAddress = walletAddress;
+        this.multicallAddress = multicallAddress;
+        this.batchSize = batchSize;
+        this.batchesInFlight = new Semaphore(maxBatchesInFlight);
+
+        scheduler.scheduleWithFixedDelay(this::flush, flushInterval, flushInterval, TimeUnit.MILLISECONDS);
+    }
+
+    public CompletableFuture<String> call(String contractAddress, String encodedFunction) {
+        PendingCall call = new PendingCall(contractAddress, encodedFunction, new CompletableFuture<>());
+        pending.add(call);
+        if (pending.size() >= batchSize && flushRequested.compareAndSet(false, true)) {
+            scheduler.execute(this::flush);
+        }
+        return call.result();
+    }
+
+    public void shutdown() {
+        scheduler.shutdownNow();
+        List<PendingCall> left = new ArrayList<>();
+        pending.drainTo(left);
+        fail(left, new CancellationException("Batcher is shut down"));
+    }
+
+    private void flush() {
+        flushRequested.set(false);
+        List<PendingCall> calls = new ArrayList<>(batchSize);
+        while (pending.drainTo(calls, batchSize) > 0) {
+            try {
+                batchesInFlight.acquire();
+            } catch (InterruptedException e) {
+                fail(calls, e);
+                Thread.currentThread().interrupt();
+                return;
+            }
+            try {
+                send(calls).whenComplete((res, ex) -> batchesInFlight.release());
+            } catch (Exception e) {
+                batchesInFlight.release();
+                fail(calls, e);
+                log.error("Failed to send eth_call batch", e);
+            }
+            calls = new ArrayList<>(batchSize);
+        }
+    }
+
+    private CompletableFuture<Void> send(List<PendingCall> calls) {
+        return multicallAddress == null ? sendBatch(calls) : sendAggregate(calls);
+    }
+
+    private CompletableFuture<Void> sendBatch(List<PendingCall> calls) {
+        BatchRequest batch = web3j.newBatch();
+        Map<Long, PendingCall> callsById = new HashMap<>();
+        for (PendingCall call : calls) {
+            Request<?, EthCall> request = web3j.ethCall(
+                    Transaction.createEthCallTransaction(walletAddress, call.contractAddress(), call.encodedFunction()),
+                    DefaultBlockParameterName.LATEST);
+            batch.add(request);
+            callsById.put(request.getId(), call);
+        }
+
+        return batch.sendAsync().handle((response, ex) -> {
+            if (ex != null) {
+                fail(calls, ex);
+                return null;
+            }
+            for (Response<?> res : response.getResponses()) {
+                PendingCall call = callsById.remove(res.getId());
+                if (call == null) {
+                    continue;
+                }
+                if (res.hasError()) {
+                    call.result().completeExceptionally(new RuntimeException(res.getError().getMessage()));
+                } else {
+                    call.result().complete(((EthCall) res).getValue());
+                }
+            }
+            fail(callsById.values(), new RuntimeException("No response in batch"));
+            return null;
+        });
+    }
+
+    private CompletableFuture<Void> sendAggregate(List<PendingCall> calls) {
+        String encodedFunction = MulticallUtil.encodeAggregate3(calls.stream()
+                .map(call -> new MulticallUtil.Call(call.contractAddress(), true, call.encodedFunction()))
+                .toList());
+
+        return web3j.ethCall(
+                        Transaction.createEthCallTransaction(walletAddress, multicallAddress, encodedFunction),
+                        DefaultBlockParameterName.LATEST)
+                .sendAsync()
+                .handle((response, ex) -> {
+                    if (ex != null) {
+                        fail(calls, ex);
+                    } else if (response.hasError()) {
+                        // e.g. the aggregate ran out of gas, calls are retried one by one inside a plain batch
+                        log.warn("aggregate3 call failed: {}. Falling back to batch request", response.getError().getMessage());
+                        return sendBatch(calls);
+                    } else {
+                        try {
+                            List<MulticallUtil.Result> results = MulticallUtil.decodeAggregate3(response.getValue());
+                            if (results.size() != calls.size()) {
+                                throw new RuntimeException("aggregate3 returned " + results.size() + " results for " + calls.size() + " calls");
+                            }
+                            for (int i = 0; i < calls.size(); i++) {
+                                if (results.get(i).success()) {
+                                    calls.get(i).result().complete(results.get(i).returnData());
+                                } else {
+                                    calls.get(i).result().completeExceptionally(new RuntimeException("Call reverted"));
+                                }
+                            }
+                        } catch (Exception e) {
+                            fail(calls, e);
+                        }
+                    }
+                    return CompletableFuture.<Void>completedFuture(null);
+                })
+                .thenCompose(Function.identity());
+    }
+
+    private static void fail(Collection<PendingCall> calls, Throwable ex) {
+        calls.forEach(call -> call.result().completeExceptionally(ex));
+    }
+
+    private record PendingCall(String contractAddress, String encodedFunction, CompletableFuture<String> result) {
+    }
+}
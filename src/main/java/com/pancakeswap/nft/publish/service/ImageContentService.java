@@ -0,0 +1,96 @@
+package com.pancakeswap.nft.publish.service;
+
+import com.pancakeswap.nft.publish.model.entity.ImageContent;
+import com.pancakeswap.nft.publish.model.entity.ImageSource;
+import com.pancakeswap.nft.publish.repository.ImageContentRepository;
+import com.pancakeswap.nft.publish.repository.ImageSourceRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Date;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.Optional;
+
+import static com.pancakeswap.nft.publish.util.UrlUtil.pancakeIpfsNode;
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+import static org.springframework.data.mongodb.core.query.Query.query;
+
+// Content addressed index of uploaded token images: sha256 of the source bytes -> S3 keys of the uploaded
+// image and its derivatives, and source url -> sha256 for ipfs urls, which can't change their content.
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class ImageContentService {
+
+    private final ImageContentRepository imageContentRepository;
+    private final ImageSourceRepository imageSourceRepository;
+    private final MongoTemplate mongoTemplate;
+
+    public static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public static String hex(byte[] digest) {
+        return HexFormat.of().formatHex(digest);
+    }
+
+    public Optional<String> hashOf(String url) {
+        if (!isImmutable(url)) {
+            return Optional.empty();
+        }
+        return imageSourceRepository.findById(url).map(ImageSource::getHash);
+    }
+
+    public Optional<ImageContent> find(String hash, TokenMetadata metadata) {
+        return imageContentRepository.findById(contentId(hash, metadata));
+    }
+
+    // Variants are merged into the ones recorded before, collections with other size specs keep their derivatives
+    public void record(String url, String hash, TokenMetadata metadata, String image, Map<String, String> variants) {
+        try {
+            Update update = new Update()
+                    .set("hash", hash)
+                    .set("type", metadata.getType())
+                    .set("image", image)
+                    .setOnInsert("created_at", new Date());
+            variants.forEach((name, key) -> update.set("variants." + name, key));
+            mongoTemplate.upsert(query(where("_id").is(contentId(hash, metadata))), update, ImageContent.class);
+            recordSource(url, hash);
+        } catch (Exception e) {
+            log.warn("Failed to record image content {} of {}: {}", hash, url, e.getMessage());
+        }
+    }
+
+    public void recordSource(String url, String hash) {
+        if (!isImmutable(url)) {
+            return;
+        }
+        try {
+            ImageSource source = new ImageSource();
+            source.setId(url);
+            source.setHash(hash);
+            source.setCreatedAt(new Date());
+            imageSourceRepository.save(source);
+        } catch (Exception e) {
+            log.warn("Failed to record image source {}: {}", url, e.getMessage());
+        }
+    }
+
+    private static boolean isImmutable(String url) {
+        return url.startsWith(pancakeIpfsNode);
+    }
+
+    private static String contentId(String hash, TokenMetadata metadata) {
+        return String.format("%s:%s", metadata.getType(), hash);
+    }
+}
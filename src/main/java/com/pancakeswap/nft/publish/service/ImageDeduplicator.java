@@ -0,0 +1,97 @@
+package com.pancakeswap.nft.publish.service;
+
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.CannedAccessControlList;
+import com.amazonaws.services.s3.model.CopyObjectRequest;
+import com.pancakeswap.nft.publish.config.Downstream;
+import com.pancakeswap.nft.publish.config.DownstreamLimiter;
+import com.pancakeswap.nft.publish.model.entity.ImageContent;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+
+// Token images whose content was uploaded before, found by the sha256 recorded per source url or per content,
+// are copied server side to the token keys instead of being transcoded and uploaded again.
+@Slf4j
+public class ImageDeduplicator {
+
+    private final ImageContentService imageContentService;
+    private final AmazonS3 s3client;
+    private final DownstreamLimiter downstreamLimiter;
+    private final String bucket;
+    private final S3ObjectIndex objectIndex;
+
+    public ImageDeduplicator(ImageContentService imageContentService, AmazonS3 s3client, DownstreamLimiter downstreamLimiter,
+                             String bucket, S3ObjectIndex objectIndex) {
+        this.imageContentService = imageContentService;
+        this.s3client = s3client;
+        this.downstreamLimiter = downstreamLimiter;
+        this.bucket = bucket;
+        this.objectIndex = objectIndex;
+    }
+
+    // Before the download, by the hash recorded for an immutable source url
+    public boolean copyKnownSource(String sourceUrl, TokenMetadata metadata, Target target) {
+        Optional<ImageContent> known = imageContentService.hashOf(sourceUrl).flatMap(hash -> imageContentService.find(hash, metadata));
+        return known.isPresent() && copy(known.get(), target);
+    }
+
+    // After the download, by the hash of the downloaded bytes
+    public boolean copySameContent(String sourceUrl, String hash, TokenMetadata metadata, Target target) {
+        Optional<ImageContent> same = imageContentService.find(hash, metadata);
+        if (same.isPresent() && copy(same.get(), target)) {
+            imageContentService.recordSource(sourceUrl, hash);
+            return true;
+        }
+        return false;
+    }
+
+    public void record(String sourceUrl, String hash, TokenMetadata metadata, String image, Map<String, String> variants) {
+        imageContentService.record(sourceUrl, hash, metadata, image, variants);
+    }
+
+    // false when the source is gone or misses one of the derivatives
+    private boolean copy(ImageContent content, Target target) {
+        Map<String, String> sources = new LinkedHashMap<>();
+        for (Map.Entry<String, String> variant : target.variantFilenames().entrySet()) {
+            String source = variantKey(content, variant.getKey());
+            if (source == null) {
+                return false;
+            }
+            sources.put(variant.getValue(), source);
+        }
+        try {
+            copyObject(content.getImage(), target.prefix(), target.imageFilename());
+            sources.forEach((filename, source) -> copyObject(source, target.prefix(), filename));
+            return true;
+        } catch (Exception e) {
+            log.warn("Failed to copy image content {}: {}", content.getId(), e.getMessage());
+            return false;
+        }
+    }
+
+    private void copyObject(String sourceKey, String prefix, String filename) {
+        String key = prefix + filename;
+        if (!key.equals(sourceKey)) {
+            try (DownstreamLimiter.Permit ignore = downstreamLimiter.acquire(Downstream.S3)) {
+                s3client.copyObject(new CopyObjectRequest(bucket, sourceKey, bucket, key)
+                        .withCannedAccessControlList(CannedAccessControlList.PublicRead));
+            }
+        }
+        objectIndex.uploaded(prefix, filename);
+    }
+
+    private static String variantKey(ImageContent content, String contentVariantName) {
+        String key = content.getVariants() != null ? content.getVariants().get(contentVariantName) : null;
+        if (key == null && "1000_png".equals(contentVariantName)) {
+            return content.getResized();
+        }
+        return key;
+    }
+
+    // Keys a token image is copied to: <prefix><image filename> and <prefix><filename> per <size>_<format> variant
+    public record Target(String prefix, String imageFilename, Map<String, String> variantFilenames) {
+    }
+}
@@ -0,0 +1,172 @@
+package com.pancakeswap.nft.publish.service;
+
+import com.pancakeswap.nft.publish.model.entity.ImageVariant;
+import lombok.extern.slf4j.Slf4j;
+import org.imgscalr.Scalr;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+import javax.imageio.stream.MemoryCacheImageOutputStream;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.*;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Resizes and encodes token images. Writers and scratch images are kept per thread,
+// a resized image is only valid until the next resize on the same thread.
+@Slf4j
+@Service
+public class ImageEngine {
+
+    private static final int MAX_SCRATCH_IMAGES = 4;
+    // bigger intermediate images are not kept between resizes
+    private static final int MAX_SCRATCH_PIXELS = 2048 * 2048;
+    private static final List<Integer> DEFAULT_VARIANT_SIZES = List.of(1000);
+    private static final Set<TokenMetadata> VARIANT_FORMATS = EnumSet.of(TokenMetadata.PNG, TokenMetadata.WEBP, TokenMetadata.AVIF);
+
+    @Value("${nft.image.preset:QUALITY}")
+    private Preset preset;
+    // deflate level 0-9 of png output, -1 keeps the writer default
+    @Value("${nft.image.png.compression.level:-1}")
+    private Integer pngCompressionLevel;
+
+    private final ThreadLocal<Map<String, ImageWriter>> writers = ThreadLocal.withInitial(HashMap::new);
+    private final ThreadLocal<Map<ScratchKey, BufferedImage>> scratchImages = ThreadLocal.withInitial(() ->
+            new LinkedHashMap<>(MAX_SCRATCH_IMAGES, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<ScratchKey, BufferedImage> eldest) {
+                    return size() > MAX_SCRATCH_IMAGES;
+                }
+            });
+    private final Map<TokenMetadata, Boolean> encodable = new ConcurrentHashMap<>();
+
+    public enum Preset {
+        // Scalr automatic method with antialiasing
+        QUALITY,
+        // progressive bilinear halving into reused scratch images
+        FAST
+    }
+
+    @PostConstruct
+    public void init() {
+        log.info("Image engine preset: {}, png compression level: {}", preset, pngCompressionLevel);
+    }
+
+    // Fits the image into a size x size box keeping its aspect ratio
+    public BufferedImage resize(BufferedImage source, int size) {
+        return switch (preset) {
+            case QUALITY -> Scalr.resize(source, Scalr.Method.AUTOMATIC, Scalr.Mode.AUTOMATIC, size, size, Scalr.OP_ANTIALIAS);
+            case FAST -> progressiveResize(source, size);
+        };
+    }
+
+    // Like resize, but an image already fitting the box is returned as it is
+    public BufferedImage downscale(BufferedImage source, int size) {
+        return Math.max(source.getWidth(), source.getHeight()) > size ? resize(source, size) : source;
+    }
+
+    // Derivatives generated for the token images of a collection, largest first. A format without an
+    // ImageIO writer on the classpath falls back to png
+    public List<ImageVariant> variants(List<Integer> sizes, String format) {
+        TokenMetadata metadata = format == null ? TokenMetadata.PNG : TokenMetadata.fromType(format.toLowerCase(Locale.ROOT));
+        if (metadata == null || !VARIANT_FORMATS.contains(metadata) || !canEncode(metadata)) {
+            metadata = TokenMetadata.PNG;
+        }
+        String type = metadata.getType();
+        return (sizes == null || sizes.isEmpty() ? DEFAULT_VARIANT_SIZES : sizes).stream()
+                .filter(size -> size != null && size > 0)
+                .distinct()
+                .sorted(Comparator.reverseOrder())
+                .map(size -> new ImageVariant(size, type))
+                .toList();
+    }
+
+    public void encode(BufferedImage image, TokenMetadata metadata, OutputStream out) throws IOException {
+        ImageWriter writer = writer(metadata.getType());
+        ImageWriteParam param = writer.getDefaultWriteParam();
+        if (metadata == TokenMetadata.PNG && pngCompressionLevel >= 0 && param.canWriteCompressed()) {
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            // the png writer maps quality q to deflate level 9 * (1 - q)
+            param.setCompressionQuality(Math.max(0f, 1f - (pngCompressionLevel + 0.5f) / 9f));
+        }
+        // in memory stream, ImageIO.write would buffer through a temp file when the disk cache is on
+        try (ImageOutputStream stream = new MemoryCacheImageOutputStream(out)) {
+            writer.setOutput(stream);
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.reset();
+        }
+    }
+
+    private BufferedImage progressiveResize(BufferedImage source, int size) {
+        int width = source.getWidth();
+        int height = source.getHeight();
+        int targetWidth;
+        int targetHeight;
+        if (width >= height) {
+            targetWidth = size;
+            targetHeight = Math.max(1, Math.round(size * ((float) height / width)));
+        } else {
+            targetHeight = size;
+            targetWidth = Math.max(1, Math.round(size * ((float) width / height)));
+        }
+        int type = source.getTransparency() == Transparency.OPAQUE ? BufferedImage.TYPE_INT_RGB : BufferedImage.TYPE_INT_ARGB;
+
+        BufferedImage current = source;
+        // halving steps keep bilinear sampling close to an area average when downscaling a lot
+        while (width / 2 >= targetWidth && height / 2 >= targetHeight) {
+            width /= 2;
+            height /= 2;
+            current = draw(current, width, height, type, current == source ? 0 : 1);
+        }
+        return draw(current, targetWidth, targetHeight, type, 2);
+    }
+
+    private BufferedImage draw(BufferedImage from, int width, int height, int type, int slot) {
+        BufferedImage to = (long) width * height > MAX_SCRATCH_PIXELS
+                ? new BufferedImage(width, height, type)
+                : scratchImages.get().computeIfAbsent(new ScratchKey(width, height, type, slot), key -> new BufferedImage(width, height, type));
+        Graphics2D graphics = to.createGraphics();
+        try {
+            graphics.setComposite(AlphaComposite.Src);
+            graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            graphics.drawImage(from, 0, 0, width, height, null);
+        } finally {
+            graphics.dispose();
+        }
+        return to;
+    }
+
+    private boolean canEncode(TokenMetadata metadata) {
+        return encodable.computeIfAbsent(metadata, m -> {
+            boolean available = ImageIO.getImageWritersByFormatName(m.getType()).hasNext();
+            if (!available) {
+                log.warn("No image writer for {}, derivatives fall back to png", m.getType());
+            }
+            return available;
+        });
+    }
+
+    private ImageWriter writer(String format) {
+        return writers.get().computeIfAbsent(format, f -> {
+            Iterator<ImageWriter> available = ImageIO.getImageWritersByFormatName(f);
+            if (!available.hasNext()) {
+                throw new IllegalStateException("No image writer for " + f);
+            }
+            return available.next();
+        });
+    }
+
+    // the slot keeps consecutive steps of the same size (e.g. a single halving) from drawing into their own source
+    private record ScratchKey(int width, int height, int type, int slot) {
+    }
+}
@@ -1,7 +1,9 @@
 package com.pancakeswap.nft.publish.service;
 
 import com.pancakeswap.nft.publish.model.dto.AbstractTokenDto;
+import com.pancakeswap.nft.publish.model.entity.ImageVariant;
 
+import java.util.List;
 import java.util.Set;
 
 public interface ImageService {
@@ -10,5 +12,10 @@ public interface ImageService {
 
     void uploadBannerImage(String collectionAddress, String imageUrl);
 
-    void s3UploadTokenImagesAsync(String collectionAddress, String imageUrl, AbstractTokenDto tokenData, Set<String> tokenIdsFailed, TokenMetadata metadata);
+    // true when the images are in S3 after the call
+    boolean s3UploadTokenImagesAsync(String collectionAddress, String imageUrl, AbstractTokenDto tokenData, Set<String> tokenIdsFailed, TokenMetadata metadata, List<ImageVariant> variants);
+
+    List<ImageVariant> tokenImageVariants(List<Integer> sizes, String format);
+
+    void releaseCollection(String collectionAddress);
 }
@@ -3,23 +3,27 @@ package com.pancakeswap.nft.publish.service;
 import com.amazonaws.auth.AWSCredentials;
 import com.amazonaws.auth.AWSStaticCredentialsProvider;
 import com.amazonaws.auth.BasicAWSCredentials;
+import com.amazonaws.client.builder.AwsClientBuilder;
 import com.amazonaws.regions.Regions;
 import com.amazonaws.services.s3.AmazonS3;
 import com.amazonaws.services.s3.AmazonS3ClientBuilder;
-import com.amazonaws.services.s3.model.CannedAccessControlList;
-import com.amazonaws.services.s3.model.ObjectMetadata;
-import com.amazonaws.services.s3.model.PutObjectRequest;
-import com.amazonaws.util.IOUtils;
+import com.amazonaws.services.s3.model.*;
+import com.pancakeswap.nft.publish.config.Downstream;
+import com.pancakeswap.nft.publish.config.DownstreamLimiter;
+import com.pancakeswap.nft.publish.config.ImageProcessingPool;
 import com.pancakeswap.nft.publish.exception.ImageLoadException;
 import com.pancakeswap.nft.publish.model.dto.AbstractTokenDto;
+import com.pancakeswap.nft.publish.model.entity.ImageVariant;
+import com.pancakeswap.nft.publish.service.cache.IpfsBlobCache;
+import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.imgscalr.Scalr;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Profile;
 import org.springframework.stereotype.Service;
 import org.web3j.crypto.Keys;
 
 import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import javax.imageio.ImageIO;
 import java.awt.image.BufferedImage;
 import java.io.ByteArrayInputStream;
@@ -28,8 +32,9 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.net.URI;
 import java.net.URL;
-import java.util.AbstractMap;
-import java.util.Set;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.util.*;
 
 import static com.pancakeswap.nft.publish.util.FileNameUtil.formattedTokenName;
 import static com.pancakeswap.nft.publish.util.UrlUtil.getIpfsFormattedUrl;
@@ -37,165 +42,392 @@ import static com.pancakeswap.nft.publish.util.UrlUtil.getIpfsFormattedUrl;
 @Slf4j
 @Service
 @Profile("!local")
+@RequiredArgsConstructor
 public class ImageUploadingService implements ImageService {
 
+    private static final byte[] PNG_SIGNATURE = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'};
+    private static final int MAX_RETAINED_BUFFER_SIZE = 8 * 1024 * 1024;
+    private static final ThreadLocal<ImageBuffer> BUFFERS = ThreadLocal.withInitial(ImageBuffer::new);
+    private static final int DOWNLOAD_ATTEMPTS = 10;
+
+    private final DownstreamLimiter downstreamLimiter;
+    private final ImageContentService imageContentService;
+    private final ImageProcessingPool imageProcessingPool;
+    private final ImageEngine imageEngine;
+    private final IpfsGatewayPool gatewayPool;
+    private final IpfsBlobCache blobCache;
+
     @Value("${aws.access.key}")
     private String accessKey;
     @Value("${aws.secret.key}")
     private String secretKey;
     @Value("${aws.bucket}")
     private String bucket;
+    @Value("${aws.endpoint:}")
+    private String endpoint;
+    @Value("${aws.multipart.part.size:8388608}")
+    private Integer multipartPartSize;
+    @Value("${aws.multipart.parallelism:4}")
+    private Integer multipartParallelism;
+    @Value("${nft.image.banner.small.size:800}")
+    private Integer bannerSmallSize;
 
     private AmazonS3 s3client;
+    private S3MultipartUploader multipartUploader;
+    private S3ObjectIndex objectIndex;
+    private ImageDeduplicator deduplicator;
 
     @PostConstruct
     public void postConstruct() {
         AWSCredentials credentials = new BasicAWSCredentials(accessKey, secretKey);
 
-        s3client = AmazonS3ClientBuilder
+        AmazonS3ClientBuilder builder = AmazonS3ClientBuilder
                 .standard()
-                .withCredentials(new AWSStaticCredentialsProvider(credentials))
-                .withRegion(Regions.AP_NORTHEAST_1)
-                .build();
+                .withCredentials(new AWSStaticCredentialsProvider(credentials));
+        if (endpoint.isBlank()) {
+            builder.withRegion(Regions.AP_NORTHEAST_1);
+        } else {
+            // S3 compatible storage, e.g. a local stub
+            builder.withEndpointConfiguration(new AwsClientBuilder.EndpointConfiguration(endpoint, Regions.AP_NORTHEAST_1.getName()))
+                    .withPathStyleAccessEnabled(true);
+        }
+        s3client = builder.build();
+        multipartUploader = new S3MultipartUploader(s3client, downstreamLimiter, multipartPartSize, multipartParallelism);
+        objectIndex = new S3ObjectIndex(s3client, downstreamLimiter, bucket);
+        deduplicator = new ImageDeduplicator(imageContentService, s3client, downstreamLimiter, bucket, objectIndex);
+    }
+
+    @PreDestroy
+    public void preDestroy() {
+        multipartUploader.shutdown();
     }
 
     @Override
     public void uploadAvatarImage(String collectionAddress, String imageUrl) {
+        ImageBuffer buffer = acquireBuffer();
         try {
-            BufferedImage original = ImageIO.read(new URL(imageUrl));
-            uploadSync(original, "avatar.png", collectionAddress, TokenMetadata.PNG);
+            BufferedImage original = readImage(imageUrl, buffer);
+            encodeIfNotPng(original, buffer);
+            storeMetadataToS3("avatar.png", collectionAddress, TokenMetadata.PNG, buffer);
         } catch (IOException ignore) {
             log.error("Failed to upload image avatar. url: {}", imageUrl);
+        } finally {
+            releaseBuffer(buffer);
         }
     }
 
     @Override
     public void uploadBannerImage(String collectionAddress, String imageUrl) {
+        ImageBuffer buffer = acquireBuffer();
         try {
-            BufferedImage original = ImageIO.read(new URL(imageUrl));
+            BufferedImage original = readImage(imageUrl, buffer);
+            encodeIfNotPng(original, buffer);
+
+            storeMetadataToS3("banner-lg.png", collectionAddress, TokenMetadata.PNG, buffer);
 
-            uploadSync(original, "banner-lg.png", collectionAddress, TokenMetadata.PNG);
-            uploadSync(original, "banner-sm.png", collectionAddress, TokenMetadata.PNG);
+            imageProcessingPool.process(() -> {
+                BufferedImage small = imageEngine.downscale(original, bannerSmallSize);
+                if (small != original) {
+                    encode(small, TokenMetadata.PNG, buffer);
+                }
+                return null;
+            });
+            storeMetadataToS3("banner-sm.png", collectionAddress, TokenMetadata.PNG, buffer);
         } catch (IOException ignore) {
             log.error("Failed to upload image banner. url: {}", imageUrl);
+        } finally {
+            releaseBuffer(buffer);
         }
     }
 
     @Override
-    public void s3UploadTokenImagesAsync(String collectionAddress, String imageUrl, AbstractTokenDto tokenData, Set<String> tokenIdsFailed, TokenMetadata metadata) {
+    public boolean s3UploadTokenImagesAsync(String collectionAddress, String imageUrl, AbstractTokenDto tokenData, Set<String> tokenIdsFailed, TokenMetadata metadata, List<ImageVariant> variants) {
         String tokenName = formattedTokenName(tokenData.getName());
-        if (!imageExist(collectionAddress, tokenName, metadata)) {
-            int attempts = 10;
-            int i = 0;
-            boolean done = false;
-            while (i < attempts && !done) {
-                try {
-                    uploadTokenImages(collectionAddress, imageUrl, tokenName, metadata);
-                    done = true;
-                } catch (IOException ignore) {
-                }
-                i++;
-            }
-            if (attempts == i) {
-                tokenIdsFailed.add(tokenData.getTokenId());
-                log.error("Failed to upload {}. url: {}, formattedTokenName: {}", metadata, imageUrl, tokenName);
-            }
+        if (imageExist(collectionAddress, tokenName, metadata, variants)) {
+            return true;
+        }
+        // downloads are retried where they happen, S3 requests by the client itself
+        try {
+            uploadTokenImages(collectionAddress, imageUrl, tokenName, metadata, variants);
+            return true;
+        } catch (IOException e) {
+            tokenIdsFailed.add(tokenData.getTokenId());
+            log.error("Failed to upload {}. url: {}, formattedTokenName: {}. Error: {}", metadata, imageUrl, tokenName, e.getMessage());
+            return false;
         }
     }
 
-    private void uploadTokenImages(String collectionAddress, String imageUrl, String tokenName, TokenMetadata metadata) throws IOException {
-        switch (metadata) {
-            case PNG -> {
-                AbstractMap.SimpleEntry<BufferedImage, BufferedImage> images = getImages(imageUrl);
-                uploadSync(images.getKey(), String.format("%s.png", tokenName), collectionAddress, metadata);
-                uploadSync(images.getValue(), String.format("%s-1000.png", tokenName), collectionAddress, metadata);
+    private void uploadTokenImages(String collectionAddress, String imageUrl, String tokenName, TokenMetadata metadata, List<ImageVariant> variants) throws IOException {
+        String sourceUrl = getIpfsFormattedUrl(imageUrl);
+        ImageDeduplicator.Target target = copyTarget(collectionAddress, tokenName, metadata, variants);
+        if (deduplicator.copyKnownSource(sourceUrl, metadata, target)) {
+            return;
+        }
+
+        ImageBuffer buffer = acquireBuffer();
+        try {
+            switch (metadata) {
+                case PNG -> {
+                    downloadWithRetry(sourceUrl, buffer);
+                    String hash = buffer.sha256();
+                    if (deduplicator.copySameContent(sourceUrl, hash, metadata, target)) {
+                        return;
+                    }
+
+                    // decoded once, every derivative is scaled from this image
+                    BufferedImage original = imageProcessingPool.process(() -> {
+                        BufferedImage decoded = ImageIO.read(buffer.toInputStream());
+                        if (decoded == null) {
+                            throw new ImageLoadException("Unsupported image format. Url: " + sourceUrl);
+                        }
+                        encodeIfNotPng(decoded, buffer);
+                        return decoded;
+                    });
+                    storeMetadataToS3(imageFilename(tokenName, metadata), collectionAddress, metadata, buffer);
+
+                    Map<String, String> stored = new LinkedHashMap<>();
+                    for (ImageVariant variant : variants) {
+                        TokenMetadata format = TokenMetadata.fromType(variant.getFormat());
+                        imageProcessingPool.process(() -> {
+                            encode(imageEngine.downscale(original, variant.getSize()), format, buffer);
+                            return null;
+                        });
+                        String filename = variantFilename(tokenName, variant);
+                        storeMetadataToS3(filename, collectionAddress, format, buffer);
+                        stored.put(contentVariantName(variant), objectKey(collectionAddress, filename));
+                    }
+
+                    deduplicator.record(sourceUrl, hash, metadata,
+                            objectKey(collectionAddress, imageFilename(tokenName, metadata)), stored);
+                }
+                case GIF, MP4 -> {
+                    String filename = imageFilename(tokenName, metadata);
+                    String hash = uploadAnimatedWithRetry(imageUrl, filename, collectionAddress, metadata);
+                    deduplicator.record(sourceUrl, hash, metadata, objectKey(collectionAddress, filename), Map.of());
+                }
             }
-            case GIF ->
-                    uploadAnimatedSync(getImage(imageUrl), String.format("%s.gif", tokenName), collectionAddress, metadata);
-            case MP4 ->
-                    uploadAnimatedSync(getImage(imageUrl), String.format("%s.mp4", tokenName), collectionAddress, metadata);
+        } finally {
+            releaseBuffer(buffer);
         }
     }
 
-    private AbstractMap.SimpleEntry<BufferedImage, BufferedImage> getImages(String imageUrl) {
-        imageUrl = getIpfsFormattedUrl(imageUrl);
-        BufferedImage original = null;
-        BufferedImage resized = null;
-        for (int i = 0; i < 10; i++) {
+    private void downloadWithRetry(String imageUrl, ImageBuffer buffer) {
+        if (readCached(imageUrl, buffer)) {
+            return;
+        }
+        for (int i = 0; i < DOWNLOAD_ATTEMPTS; i++) {
             try {
-                original = ImageIO.read(new URL(imageUrl));
-                resized = Scalr.resize(
-                        ImageIO.read(new URL(imageUrl)),
-                        Scalr.Method.AUTOMATIC,
-                        Scalr.Mode.AUTOMATIC,
-                        1000,
-                        1000,
-                        Scalr.OP_ANTIALIAS);
-                break;
+                try (DownstreamLimiter.Permit ignore = downstreamLimiter.acquire(Downstream.IPFS)) {
+                    gatewayPool.execute(imageUrl, (url, responded) -> {
+                        transfer(new URL(url), buffer, responded);
+                        return null;
+                    });
+                }
+                blobCache.put(imageUrl, buffer::writeTo);
+                return;
             } catch (Exception e) {
                 log.error(e.getMessage());
             }
         }
-        if (original == null || resized == null) {
-            throw new ImageLoadException("Failed to load image. Url: " + imageUrl);
-        }
 
-        return new AbstractMap.SimpleEntry<>(original, resized);
+        throw new ImageLoadException("Failed to load image. Url: " + imageUrl);
     }
 
-    private URL getImage(String imageUrl) {
-        imageUrl = getIpfsFormattedUrl(imageUrl);
-        URL original = null;
-        for (int i = 0; i < 10; i++) {
+    // the stream can't be resumed, a failed attempt starts the upload over from another resolved gateway
+    private String uploadAnimatedWithRetry(String imageUrl, String filename, String collectionAddress, TokenMetadata metadata) {
+        for (int i = 0; i < DOWNLOAD_ATTEMPTS; i++) {
             try {
-                original = new URI(imageUrl).toURL();
-                break;
-            } catch (Exception ignore) {
+                return uploadAnimatedSync(getImage(imageUrl), filename, collectionAddress, metadata);
+            } catch (Exception e) {
+                log.error(e.getMessage());
             }
         }
-        if (original == null) {
+
+        throw new ImageLoadException("Failed to load image. Url: " + imageUrl);
+    }
+
+    private URL getImage(String imageUrl) {
+        imageUrl = gatewayPool.resolve(getIpfsFormattedUrl(imageUrl));
+        try {
+            return new URI(imageUrl).toURL();
+        } catch (Exception e) {
             throw new ImageLoadException("Failed to load image. Url: " + imageUrl);
         }
+    }
 
-        return original;
+    // the downloaded bytes are uploaded as they are when they already hold a png
+    private void encodeIfNotPng(BufferedImage image, ImageBuffer buffer) throws IOException {
+        if (!buffer.isPng()) {
+            encode(image, TokenMetadata.PNG, buffer);
+        }
     }
 
-    private void uploadSync(BufferedImage image, String filename, String contract, TokenMetadata metadata) throws IOException {
-        ByteArrayOutputStream outstream = new ByteArrayOutputStream();
-        ImageIO.write(image, metadata.getType(), outstream);
-        byte[] buffer = outstream.toByteArray();
-        storeMetadataToS3(filename, contract, metadata, buffer);
+    private void encode(BufferedImage image, TokenMetadata metadata, ImageBuffer buffer) throws IOException {
+        buffer.reset();
+        imageEngine.encode(image, metadata, buffer);
     }
 
-    private void storeMetadataToS3(String filename, String contract, TokenMetadata metadata, byte[] buffer) {
-        InputStream is = new ByteArrayInputStream(buffer);
+    private void storeMetadataToS3(String filename, String contract, TokenMetadata metadata, ImageBuffer buffer) {
+        InputStream is = buffer.toInputStream();
+        ObjectMetadata meta = objectMetadata(metadata);
+        meta.setContentLength(buffer.size());
+
+        PutObjectRequest putObject = new PutObjectRequest(bucket, objectKey(contract, filename), is, meta)
+                .withCannedAcl(CannedAccessControlList.PublicRead);
+
+        try (DownstreamLimiter.Permit ignore = downstreamLimiter.acquire(Downstream.S3)) {
+            s3client.putObject(putObject);
+        }
+        indexUploaded(contract, filename);
+    }
+
+    // the download is piped into S3 part by part, large animations are never held in memory as a whole.
+    // Returns sha256 of the uploaded content
+    private String uploadAnimatedSync(URL url, String filename, String collectionAddress, TokenMetadata metadata) throws IOException {
+        MessageDigest digest = ImageContentService.sha256();
+        try (DownstreamLimiter.Permit ignore = downstreamLimiter.acquire(Downstream.IPFS);
+             InputStream in = new DigestInputStream(url.openStream(), digest)) {
+            multipartUploader.upload(bucket, objectKey(collectionAddress, filename), objectMetadata(metadata), CannedAccessControlList.PublicRead, in);
+        }
+        indexUploaded(collectionAddress, filename);
+        return ImageContentService.hex(digest.digest());
+    }
+
+    private static ObjectMetadata objectMetadata(TokenMetadata metadata) {
         ObjectMetadata meta = new ObjectMetadata();
         meta.setCacheControl("public, max-age= 2592000");
         meta.setContentType(metadata.getContentType());
-        meta.setContentLength(buffer.length);
+        return meta;
+    }
 
-        PutObjectRequest putObject = new PutObjectRequest(bucket, String.format("%s/%s/%s", "mainnet", Keys.toChecksumAddress(contract), filename), is, meta)
-                .withCannedAcl(CannedAccessControlList.PublicRead);
+    @Override
+    public List<ImageVariant> tokenImageVariants(List<Integer> sizes, String format) {
+        return imageEngine.variants(sizes, format);
+    }
 
-        s3client.putObject(putObject);
+    @Override
+    public void releaseCollection(String collectionAddress) {
+        objectIndex.release(collectionPrefix(collectionAddress));
+        if (blobCache.isEnabled()) {
+            log.info("IPFS blob cache {}", blobCache.stats());
+        }
     }
 
-    private void uploadAnimatedSync(URL url, String filename, String collectionAddress, TokenMetadata metadata) throws IOException {
-        try (InputStream in = url.openStream()) {
+    // all S3 keys of a collection are built here: mainnet/<checksum address>/<filename>
+    private static String collectionPrefix(String contract) {
+        return String.format("%s/%s/", "mainnet", Keys.toChecksumAddress(contract));
+    }
+
+    private static String objectKey(String contract, String filename) {
+        return collectionPrefix(contract) + filename;
+    }
+
+    private static String imageFilename(String formattedTokenName, TokenMetadata metadata) {
+        return String.format("%s.%s", formattedTokenName, metadata.getType());
+    }
+
+    // <size>.<format>, e.g. 1000.png
+    private static String variantName(ImageVariant variant) {
+        return String.format("%d.%s", variant.getSize(), variant.getFormat());
+    }
+
+    private static String variantFilename(String formattedTokenName, ImageVariant variant) {
+        return String.format("%s-%s", formattedTokenName, variantName(variant));
+    }
 
-            byte[] data = IOUtils.toByteArray(in);
-            storeMetadataToS3(filename, collectionAddress, metadata, data);
+    // <size>_<format>, mongo map keys can't hold dots
+    private static String contentVariantName(ImageVariant variant) {
+        return String.format("%d_%s", variant.getSize(), variant.getFormat());
+    }
+
+    private boolean imageExist(String collectionAddress, String formattedTokenName, TokenMetadata metadata, List<ImageVariant> variants) {
+        List<String> filenames = new ArrayList<>();
+        filenames.add(imageFilename(formattedTokenName, metadata));
+        if (metadata == TokenMetadata.PNG) {
+            variants.forEach(variant -> filenames.add(variantFilename(formattedTokenName, variant)));
         }
+
+        return objectIndex.exist(collectionPrefix(collectionAddress), filenames);
     }
 
-    private boolean imageExist(String collectionAddress, String formattedTokenName, TokenMetadata metadata) {
-        String image = String.format("%s/%s/%s.%s", "mainnet", collectionAddress, formattedTokenName, metadata.getType());
-        boolean exist = s3client.doesObjectExist(bucket, image);
+    private static ImageDeduplicator.Target copyTarget(String collectionAddress, String formattedTokenName, TokenMetadata metadata, List<ImageVariant> variants) {
+        Map<String, String> variantFilenames = new LinkedHashMap<>();
         if (metadata == TokenMetadata.PNG) {
-            String resizedImage = String.format("%s/%s/%s-1000.%s", "mainnet", Keys.toChecksumAddress(collectionAddress), formattedTokenName, metadata.getType());
-            return exist && s3client.doesObjectExist(bucket, resizedImage);
+            variants.forEach(variant -> variantFilenames.put(contentVariantName(variant), variantFilename(formattedTokenName, variant)));
+        }
+        return new ImageDeduplicator.Target(collectionPrefix(collectionAddress), imageFilename(formattedTokenName, metadata), variantFilenames);
+    }
+
+    private void indexUploaded(String contract, String filename) {
+        objectIndex.uploaded(collectionPrefix(contract), filename);
+    }
+
+    private BufferedImage readImage(String imageUrl, ImageBuffer buffer) throws IOException {
+        download(new URL(imageUrl), buffer);
+        return ImageIO.read(buffer.toInputStream());
+    }
+
+    private void download(URL url, ImageBuffer buffer) throws IOException {
+        try (DownstreamLimiter.Permit ignore = downstreamLimiter.acquire(Downstream.IPFS)) {
+            transfer(url, buffer, () -> {
+            });
         }
-        return exist;
     }
 
+    private boolean readCached(String imageUrl, ImageBuffer buffer) {
+        buffer.reset();
+        try {
+            return blobCache.copyTo(imageUrl, buffer);
+        } catch (IOException e) {
+            log.warn("Failed to read cached {}: {}", imageUrl, e.getMessage());
+            return false;
+        }
+    }
+
+    // responded runs once the response headers are in, before the body is read
+    private static void transfer(URL url, ImageBuffer buffer, Runnable responded) throws IOException {
+        buffer.reset();
+        try (InputStream in = url.openStream()) {
+            responded.run();
+            in.transferTo(buffer);
+        }
+    }
+
+    private static ImageBuffer acquireBuffer() {
+        ImageBuffer buffer = BUFFERS.get();
+        buffer.reset();
+        return buffer;
+    }
+
+    private static void releaseBuffer(ImageBuffer buffer) {
+        if (buffer.capacity() > MAX_RETAINED_BUFFER_SIZE) {
+            BUFFERS.remove();
+        }
+    }
+
+    // Growable download/encode buffer reused by the thread, its content is read without copying
+    private static class ImageBuffer extends ByteArrayOutputStream {
+
+        ImageBuffer() {
+            super(64 * 1024);
+        }
+
+        InputStream toInputStream() {
+            return new ByteArrayInputStream(buf, 0, count);
+        }
+
+        String sha256() {
+            MessageDigest digest = ImageContentService.sha256();
+            digest.update(buf, 0, count);
+            return ImageContentService.hex(digest.digest());
+        }
+
+        boolean isPng() {
+            return count >= PNG_SIGNATURE.length && Arrays.equals(buf, 0, PNG_SIGNATURE.length, PNG_SIGNATURE, 0, PNG_SIGNATURE.length);
+        }
+
+        int capacity() {
+            return buf.length;
+        }
+    }
 }
@@ -0,0 +1,294 @@
+package com.pancakeswap.nft.publish.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+import static com.pancakeswap.nft.publish.util.UrlUtil.getIpfsPath;
+
+// IPFS gateways content is fetched from. Urls keep their canonical form on the pancake gateway and are
+// rewritten per request to the healthiest gateway: the lowest latency EWMA, weighted up by the error EWMA.
+// With hedging on, a request still running after the p95 latency of its gateway is also sent to the next
+// best one, and a failed request fails over to it right away. The first success wins.
+@Slf4j
+@Service
+public class IpfsGatewayPool {
+
+    // weight of the newest sample in the moving averages
+    private static final double ALPHA = 0.2;
+    // an error rate of 10% doubles the score of a gateway
+    private static final double ERROR_PENALTY = 10;
+    // latency a failed request is worth on top, so a gateway failing right away doesn't keep the best score
+    private static final double FAILURE_COST_MS = 1000;
+    private static final int LATENCY_SAMPLES = 128;
+
+    @Value("${nft.ipfs.gateways:https://pancake.mypinata.cloud}")
+    private String[] gatewayUrls;
+    @Value("${nft.ipfs.hedge.enabled:false}")
+    private Boolean hedgeEnabled;
+    @Value("${nft.ipfs.hedge.min.delay:200}")
+    private Long hedgeMinDelay;
+    // share of requests sent to a random gateway, so a penalized one gets the chance to recover
+    @Value("${nft.ipfs.explore.ratio:0.05}")
+    private Double exploreRatio;
+
+    private List<Gateway> gateways;
+
+    @PostConstruct
+    public void init() {
+        gateways = Arrays.stream(gatewayUrls)
+                .map(String::trim)
+                .filter(url -> !url.isEmpty())
+                .map(url -> new Gateway(url.endsWith("/") ? url.substring(0, url.length() - 1) : url))
+                .toList();
+        if (gateways.isEmpty()) {
+            throw new IllegalStateException("nft.ipfs.gateways has no gateway");
+        }
+        log.info("IPFS gateways: {}, hedging: {}", gateways.stream().map(Gateway::getBaseUrl).toList(), hedgeEnabled);
+    }
+
+    // Blocking request to the healthiest gateway, the outcome is recorded against it. The latency recorded is the
+    // time until the call reports the response, a large body read after it says nothing about the gateway
+    public <T> T execute(String url, GatewayCall<T> call) throws IOException {
+        String path = getIpfsPath(url);
+        if (path == null) {
+            return call.call(url, () -> {
+            });
+        }
+        Gateway gateway = select(null);
+        long started = System.nanoTime();
+        long[] responded = {0};
+        boolean succeeded = false;
+        try {
+            T result = call.call(gateway.url(path), () -> responded[0] = System.nanoTime());
+            succeeded = true;
+            return result;
+        } finally {
+            gateway.record((responded[0] != 0 ? responded[0] : System.nanoTime()) - started, succeeded);
+        }
+    }
+
+    // Url on the healthiest gateway, for requests whose duration says nothing about the gateway (large downloads)
+    public String resolve(String url) {
+        String path = getIpfsPath(url);
+        return path == null ? url : select(null).url(path);
+    }
+
+    /**
+     * Async request to the healthiest gateway, hedged on the next best one when enabled. A response
+     * not matching {@code succeeded} counts as a gateway error and completes the request only when no
+     * other attempt is left.
+     */
+    public <T> CompletableFuture<T> request(String url, Function<String, CompletableFuture<T>> send, Predicate<T> succeeded,
+                                            ScheduledExecutorService timer) {
+        String path = getIpfsPath(url);
+        if (path == null) {
+            return send.apply(url);
+        }
+        Gateway primary = select(null);
+        if (!hedgeEnabled || gateways.size() < 2) {
+            return send(primary, path, send, succeeded);
+        }
+        return new HedgedRequest<>(primary, path, send, succeeded).start(timer);
+    }
+
+    public List<GatewaySnapshot> snapshot() {
+        return gateways.stream().map(Gateway::snapshot).toList();
+    }
+
+    // The response as sent, so cancelling it reaches the sender. An abandoned (cancelled) request is not recorded
+    private <T> CompletableFuture<T> send(Gateway gateway, String path, Function<String, CompletableFuture<T>> send, Predicate<T> succeeded) {
+        long started = System.nanoTime();
+        CompletableFuture<T> response;
+        try {
+            response = send.apply(gateway.url(path));
+        } catch (Exception e) {
+            response = CompletableFuture.failedFuture(e);
+        }
+        CompletableFuture<T> sent = response;
+        sent.whenComplete((res, e) -> {
+            if (!sent.isCancelled()) {
+                gateway.record(System.nanoTime() - started, e == null && succeeded.test(res));
+            }
+        });
+        return sent;
+    }
+
+    private Gateway select(Gateway excluded) {
+        List<Gateway> candidates = excluded == null ? gateways : gateways.stream().filter(g -> g != excluded).toList();
+        if (candidates.isEmpty()) {
+            return null;
+        }
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        if (candidates.size() > 1 && random.nextDouble() < exploreRatio) {
+            return candidates.get(random.nextInt(candidates.size()));
+        }
+        return candidates.stream().min(Comparator.comparingDouble(Gateway::score)).orElseThrow();
+    }
+
+    public interface GatewayCall<T> {
+        T call(String url, Runnable responded) throws IOException;
+    }
+
+    public record GatewaySnapshot(String gateway, long requests, long latencyMs, long p95Ms, double errorRate) {
+    }
+
+    // One request sent to at most two gateways, the one still running when the other wins is cancelled
+    private class HedgedRequest<T> {
+        private final Gateway primary;
+        private final String path;
+        private final Function<String, CompletableFuture<T>> send;
+        private final Predicate<T> succeeded;
+        private final CompletableFuture<T> result = new CompletableFuture<>();
+        private final List<CompletableFuture<T>> attempts = new ArrayList<>(2);
+        private int running = 1;
+        private boolean hedged;
+
+        HedgedRequest(Gateway primary, String path, Function<String, CompletableFuture<T>> send, Predicate<T> succeeded) {
+            this.primary = primary;
+            this.path = path;
+            this.send = send;
+            this.succeeded = succeeded;
+        }
+
+        CompletableFuture<T> start(ScheduledExecutorService timer) {
+            sent(IpfsGatewayPool.this.send(primary, path, send, succeeded));
+            if (!result.isDone()) {
+                timer.schedule(this::hedge, Math.max(hedgeMinDelay, primary.p95()), TimeUnit.MILLISECONDS);
+            }
+            return result;
+        }
+
+        private void hedge() {
+            if (!result.isDone()) {
+                sendSecondary();
+            }
+        }
+
+        private void sendSecondary() {
+            Gateway secondary;
+            synchronized (this) {
+                if (hedged || result.isDone()) {
+                    return;
+                }
+                hedged = true;
+                secondary = select(primary);
+                running++;
+            }
+            sent(IpfsGatewayPool.this.send(secondary, path, send, succeeded));
+        }
+
+        private void sent(CompletableFuture<T> attempt) {
+            synchronized (this) {
+                attempts.add(attempt);
+            }
+            attempt.whenComplete(this::completed);
+            if (result.isDone()) {
+                attempt.cancel(true);
+            }
+        }
+
+        private void completed(T res, Throwable e) {
+            if (e == null && succeeded.test(res)) {
+                result.complete(res);
+                List<CompletableFuture<T>> started;
+                synchronized (this) {
+                    started = new ArrayList<>(attempts);
+                }
+                started.forEach(attempt -> attempt.cancel(true));
+                return;
+            }
+            if (e instanceof CancellationException) {
+                return;
+            }
+            boolean failed;
+            synchronized (this) {
+                running--;
+                failed = running == 0 && hedged;
+            }
+            if (!failed) {
+                // fail over without waiting for the hedge delay
+                sendSecondary();
+                synchronized (this) {
+                    failed = running == 0;
+                }
+            }
+            if (failed) {
+                complete(res, e);
+            }
+        }
+
+        private void complete(T res, Throwable e) {
+            if (e != null) {
+                result.completeExceptionally(e);
+            } else {
+                result.complete(res);
+            }
+        }
+    }
+
+    private static class Gateway {
+        private final String baseUrl;
+        private final long[] samples = new long[LATENCY_SAMPLES];
+        private int sampleCount;
+        private long requests;
+        private double latencyMs;
+        private double errorRate;
+
+        Gateway(String baseUrl) {
+            this.baseUrl = baseUrl;
+        }
+
+        String getBaseUrl() {
+            return baseUrl;
+        }
+
+        String url(String path) {
+            return baseUrl + "/ipfs/" + path;
+        }
+
+        synchronized void record(long nanos, boolean succeeded) {
+            long millis = TimeUnit.NANOSECONDS.toMillis(nanos);
+            latencyMs = requests == 0 ? millis : ALPHA * millis + (1 - ALPHA) * latencyMs;
+            errorRate = ALPHA * (succeeded ? 0 : 1) + (1 - ALPHA) * errorRate;
+            samples[(int) (requests % LATENCY_SAMPLES)] = millis;
+            sampleCount = Math.min(sampleCount + 1, LATENCY_SAMPLES);
+            requests++;
+        }
+
+        // a gateway without samples scores best, so every gateway gets measured
+        synchronized double score() {
+            return latencyMs * (1 + ERROR_PENALTY * errorRate) + FAILURE_COST_MS * errorRate;
+        }
+
+        synchronized long p95() {
+            if (sampleCount == 0) {
+                return 0;
+            }
+            long[] sorted = Arrays.copyOf(samples, sampleCount);
+            Arrays.sort(sorted);
+            return sorted[(int) Math.ceil(sampleCount * 0.95) - 1];
+        }
+
+        GatewaySnapshot snapshot() {
+            long p95 = p95();
+            synchronized (this) {
+                return new GatewaySnapshot(baseUrl, requests, Math.round(latencyMs), p95, Math.round(errorRate * 1000) / 1000d);
+            }
+        }
+    }
+}
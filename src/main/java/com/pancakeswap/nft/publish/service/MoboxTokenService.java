@@ -1,82 +1,223 @@
 package com.pancakeswap.nft.publish.service;
 
+import com.pancakeswap.nft.publish.config.Downstream;
+import com.pancakeswap.nft.publish.config.DownstreamLimiter;
+import com.pancakeswap.nft.publish.exception.ListingException;
+import com.pancakeswap.nft.publish.model.dto.AttributeDto;
 import com.pancakeswap.nft.publish.model.entity.Attribute;
 import com.pancakeswap.nft.publish.model.entity.Collection;
+import com.pancakeswap.nft.publish.model.entity.CollectionInfo;
 import com.pancakeswap.nft.publish.model.entity.Token;
+import com.pancakeswap.nft.publish.model.entity.TokenTrait;
+import com.pancakeswap.nft.publish.model.sc.LogField;
 import com.pancakeswap.nft.publish.model.sc.NftInfo;
-import com.pancakeswap.nft.publish.repository.AttributeRepository;
-import com.pancakeswap.nft.publish.repository.TokenRepository;
+import com.pancakeswap.nft.publish.repository.CollectionInfoRepository;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.bson.types.ObjectId;
-import org.springframework.data.domain.Page;
-import org.springframework.data.domain.PageRequest;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.stereotype.Service;
 
+import javax.annotation.PostConstruct;
+import java.io.IOException;
 import java.math.BigInteger;
-import java.util.Date;
-import java.util.List;
-import java.util.Optional;
-import java.util.stream.Collectors;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
 
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+import static org.springframework.data.mongodb.core.query.Query.query;
+
+// Keeps the "lv" attribute of Mobox tokens equal to the level on chain. Every run refreshes the tokens named by
+// the level event (nft.mobox.level.event.*) since the checkpoint, all tokens are refreshed once per
+// nft.mobox.level.full.refresh.hours. Without a level event every run refreshes all tokens.
 @Slf4j
 @Service
 @RequiredArgsConstructor
 public class MoboxTokenService {
 
-    private final DBService dbService;
     private final BlockChainService blockChainService;
-    private final AttributeRepository attributeRepository;
-    private final TokenRepository tokenRepository;
+    private final AttributeService attributeService;
+    private final TokenScanner tokenScanner;
+    private final CollectionInfoRepository collectionInfoRepository;
+    private final TransferSyncService transferSyncService;
+    private final MongoTemplate mongoTemplate;
+    private final DownstreamLimiter downstreamLimiter;
     private final static String LEVEL_ATTRIBUTE = "lv";
     private final static int PAGE_SIZE = 1000;
 
+    // 0 leaves only the full refresh of the first run
+    @Value("${nft.mobox.level.full.refresh.hours:24}")
+    private Long fullRefreshHours;
+    // signature of the event emitted on a level change, e.g. LevelUp(uint256,uint256)
+    @Value("${nft.mobox.level.event.signature:}")
+    private String levelEventSignature;
+    // contract emitting the level event, blank for the collection itself
+    @Value("${nft.mobox.level.event.address:}")
+    private String levelEventAddress;
+    // token id argument of the level event, topic1-3 when indexed, data0, data1, ... otherwise
+    @Value("${nft.mobox.level.event.token.id:topic1}")
+    private String levelEventTokenId;
+
+    private LogField levelEventTokenIdField;
+
+    @PostConstruct
+    public void init() {
+        levelEventTokenIdField = LogField.parse(levelEventTokenId);
+        if (levelEventSignature.isBlank()) {
+            log.warn("No Mobox level event configured, every run refreshes the levels of all tokens");
+        }
+    }
+
+    public void refreshLevels(Collection collection, CollectionInfo info) throws IOException {
+        BigInteger head = transferSyncService.confirmedHead();
+        Date now = new Date();
+        if (info.getLevelSyncedBlock() == null || info.getLevelRefreshedAt() == null || levelEventSignature.isBlank()
+                || fullRefreshHours > 0 && now.getTime() - info.getLevelRefreshedAt().getTime() >= TimeUnit.HOURS.toMillis(fullRefreshHours)) {
+            updateLevels(collection);
+            info.setLevelRefreshedAt(now);
+            collectionInfoRepository.findAndSetLevelRefreshedAtById(info.getId(), now);
+        } else {
+            BigInteger fromBlock = BigInteger.valueOf(info.getLevelSyncedBlock() + 1);
+            if (fromBlock.compareTo(head) > 0) {
+                return;
+            }
+            String emitter = levelEventAddress.isBlank() ? collection.getAddress() : levelEventAddress;
+            Set<String> tokenIds = new LinkedHashSet<>();
+            transferSyncService.scanEventValues(emitter, levelEventSignature, levelEventTokenIdField, fromBlock, head)
+                    .forEach(tokenId -> tokenIds.add(tokenId.toString()));
+            updateLevels(collection, tokenIds);
+        }
+        info.setLevelSyncedBlock(head.longValue());
+        collectionInfoRepository.findAndSetLevelSyncedBlockById(info.getId(), head.longValue());
+    }
+
     public void updateLevels(Collection collection) {
-        String collectionAddress = collection.getAddress();
         String collectionId = collection.getId();
-        ObjectId collectionObj = new ObjectId(collectionId);
+        LevelStats stats = new LevelStats();
 
-        PageRequest pageRequest = PageRequest.ofSize(PAGE_SIZE);
-        Page<Token> onePage = tokenRepository.findAllByParentCollection(collectionObj, pageRequest);
-        processPage(collectionAddress, onePage);
+        tokenScanner.scan(new ObjectId(collectionId), PAGE_SIZE,
+                tokens -> processTokens(collectionId, collection.getAddress(), tokens, stats),
+                "token_id", "attributes", "traits");
+        attributeService.evict(collectionId);
+        log.info("Mobox levels of all tokens refreshed. {}", stats);
+    }
 
-        boolean allFetched = onePage.getTotalElements() < PAGE_SIZE;
-        while (!allFetched) {
-            pageRequest = pageRequest.next();
-            onePage = tokenRepository.findAllByParentCollection(collectionObj, pageRequest);
-            allFetched = onePage.getTotalElements() < PAGE_SIZE;
+    public void updateLevels(Collection collection, Set<String> tokenIds) {
+        String collectionId = collection.getId();
+        ObjectId collectionObj = new ObjectId(collectionId);
+        LevelStats stats = new LevelStats();
 
-            processPage(collectionAddress, onePage);
+        List<String> ids = new ArrayList<>(tokenIds);
+        for (int from = 0; from < ids.size(); from += PAGE_SIZE) {
+            Query tokens = query(where("parent_collection").is(collectionObj)
+                    .and("token_id").in(ids.subList(from, Math.min(from + PAGE_SIZE, ids.size()))));
+            tokens.fields().include("token_id").include("attributes").include("traits");
+            processTokens(collectionId, collection.getAddress(), mongoTemplate.find(tokens, Token.class), stats);
         }
+        attributeService.evict(collectionId);
+        log.info("Mobox levels of {} tokens in the logs refreshed. {}", tokenIds.size(), stats);
     }
 
-    public void processPage(String collectionAddress, Page<Token> onePage) {
-        onePage.stream().forEach(token -> {
-            List<String> attributesId = getAttributesId(token);
-            Optional<Attribute> levelAttributeFromDB = attributeRepository.findFirstByIdInAndTraitType(attributesId, LEVEL_ATTRIBUTE);
-            if (levelAttributeFromDB.isPresent()) {
-                try {
-                    NftInfo nftInfo = blockChainService.getNftInfo(collectionAddress, new BigInteger(token.getTokenId()));
-                    Attribute lvlAttribute = levelAttributeFromDB.get();
-                    String tokenLvlFromDB = lvlAttribute.getValue();
-                    String tokenLvlFromChain = nftInfo.getLv().toString();
-                    if (!tokenLvlFromDB.equals(tokenLvlFromChain)) {
-                        lvlAttribute.setValue(tokenLvlFromChain);
-                        lvlAttribute.setUpdatedAt(new Date());
-                        attributeRepository.save(lvlAttribute);
+    // Levels of the tokens are read in node batches, the changed ones are swapped in place with one bulk write.
+    // The embedded traits of a token are read and swapped along, a token failing is logged and left for the next run
+    private void processTokens(String collectionId, String collectionAddress, List<Token> tokens, LevelStats stats) {
+        if (tokens.isEmpty()) {
+            return;
+        }
+        List<CompletableFuture<NftInfo>> nftInfos = tokens.stream()
+                .map(token -> blockChainService.getNftInfoAsync(collectionAddress, new BigInteger(token.getTokenId())))
+                .toList();
+        Map<ObjectId, String> levels = levelAttributes(tokens);
+
+        Date now = new Date();
+        BulkOperations ops = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, Token.class);
+        int swaps = 0;
+        for (int i = 0; i < tokens.size(); i++) {
+            Token token = tokens.get(i);
+            stats.checked++;
+            try {
+                TokenTrait level = levelOf(token, levels);
+                String tokenLvlFromChain = nftInfos.get(i).get().getLv().toString();
+                if (!tokenLvlFromChain.equals(level.getValue())) {
+                    ObjectId newLvlAttribute = attributeService.storeAttribute(collectionId, new AttributeDto(LEVEL_ATTRIBUTE, tokenLvlFromChain));
+                    Update update = new Update()
+                            .set("attributes.$[a]", newLvlAttribute)
+                            .set("updated_at", now)
+                            .filterArray(where("a").is(level.getAttribute()));
+                    if (token.getTraits() != null) {
+                        update.set("traits.$[t]", new TokenTrait(LEVEL_ATTRIBUTE, tokenLvlFromChain, newLvlAttribute))
+                                .filterArray(where("t.attribute").is(level.getAttribute()));
                     }
-                } catch (Exception e) {
-                    throw new RuntimeException(e);
+                    ops.updateOne(query(where("_id").is(new ObjectId(token.getId())).and("attributes").is(level.getAttribute())), update);
+                    swaps++;
                 }
-            } else {
-                throw new RuntimeException(String.format("Missing attribute: '%s' for token: %s", LEVEL_ATTRIBUTE, token));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new ListingException("Mobox level refresh interrupted");
+            } catch (Exception e) {
+                stats.failed++;
+                String message = e instanceof ExecutionException && e.getCause() != null ? e.getCause().getMessage() : e.getMessage();
+                log.warn("Failed to refresh level of Mobox token {}. Error: {}", token.getTokenId(), message);
             }
-        });
+        }
+        if (swaps == 0) {
+            return;
+        }
+
+        try (DownstreamLimiter.Permit ignore = downstreamLimiter.acquire(Downstream.MONGO)) {
+            ops.execute();
+            stats.updated += swaps;
+        } catch (BulkOperationException e) {
+            stats.updated += swaps - e.getErrors().size();
+            stats.failed += e.getErrors().size();
+            log.warn("{} Mobox level updates failed. Error: {}", e.getErrors().size(), e.getErrors().get(0).getMessage());
+        }
+    }
+
+    private static TokenTrait levelOf(Token token, Map<ObjectId, String> levels) {
+        if (token.getTraits() != null) {
+            return token.getTraits().stream()
+                    .filter(trait -> LEVEL_ATTRIBUTE.equals(trait.getTraitType()))
+                    .findFirst()
+                    .orElseThrow(() -> new ListingException(String.format("Missing trait: '%s'", LEVEL_ATTRIBUTE)));
+        }
+        ObjectId attribute = token.getAttributes() == null ? null : token.getAttributes().stream()
+                .filter(levels::containsKey)
+                .findFirst()
+                .orElseThrow(() -> new ListingException(String.format("Missing attribute: '%s'", LEVEL_ATTRIBUTE)));
+        return new TokenTrait(LEVEL_ATTRIBUTE, levels.get(attribute), attribute);
     }
 
-    private static List<String> getAttributesId(Token token) {
-        return token.getAttributes().stream()
-                .map(ObjectId::toString)
-                .collect(Collectors.toList());
+    // level attribute ids of the tokens without embedded traits with their values, one query per batch
+    private Map<ObjectId, String> levelAttributes(List<Token> tokens) {
+        Set<ObjectId> attributeIds = new HashSet<>();
+        tokens.stream().filter(t -> t.getTraits() == null && t.getAttributes() != null).forEach(t -> attributeIds.addAll(t.getAttributes()));
+        if (attributeIds.isEmpty()) {
+            return Map.of();
+        }
+        Query levels = query(where("_id").in(attributeIds).and("trait_type").is(LEVEL_ATTRIBUTE));
+        levels.fields().include("value");
+
+        Map<ObjectId, String> values = new HashMap<>();
+        mongoTemplate.find(levels, Attribute.class).forEach(a -> values.put(new ObjectId(a.getId()), a.getValue()));
+        return values;
+    }
+
+    private static class LevelStats {
+        private int checked;
+        private int updated;
+        private int failed;
+
+        @Override
+        public String toString() {
+            return String.format("Checked: %d, updated: %d, failed: %d", checked, updated, failed);
+        }
     }
 }
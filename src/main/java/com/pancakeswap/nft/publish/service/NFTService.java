@@ -1,22 +1,28 @@
 package com.pancakeswap.nft.publish.service;
 
 import com.pancakeswap.nft.publish.config.FutureConfig;
+import com.pancakeswap.nft.publish.config.ListingExecutor;
 import com.pancakeswap.nft.publish.exception.ListingException;
 import com.pancakeswap.nft.publish.model.dto.AbstractTokenDto;
 import com.pancakeswap.nft.publish.model.dto.collection.CollectionDataDto;
 import com.pancakeswap.nft.publish.model.dto.collection.ListCollectionTokenParams;
 import com.pancakeswap.nft.publish.model.entity.Collection;
+import com.pancakeswap.nft.publish.model.entity.ImageVariant;
 import com.pancakeswap.nft.publish.service.cache.CacheService;
+import com.pancakeswap.nft.publish.service.cache.TokenResponseCache;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.logging.log4j.util.Strings;
 import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Service;
 
 import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Set;
+import java.util.List;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.atomic.AtomicInteger;
 
+import static com.pancakeswap.nft.publish.config.ListingStage.*;
 import static com.pancakeswap.nft.publish.util.GsonUtil.parseBody;
 import static com.pancakeswap.nft.publish.util.UrlUtil.getIpfsFormattedUrl;
 
@@ -29,8 +35,10 @@ public class NFTService extends AbstractNFTService {
             TokenDataService tokenDataService,
             ImageService imageService,
             DBService dbService,
-            CacheService cacheService) {
-        super(imageService, dbService, tokenDataService, blockChainService, cacheService);
+            CacheService cacheService,
+            ListingExecutor listingExecutor,
+            TokenResponseCache tokenResponseCache) {
+        super(imageService, dbService, tokenDataService, blockChainService, cacheService, listingExecutor, tokenResponseCache);
     }
 
     @Async
@@ -46,7 +54,7 @@ public class NFTService extends AbstractNFTService {
 
     @Async
     protected CompletableFuture<Boolean> list(CollectionDataDto dataDto) throws ExecutionException, InterruptedException {
-        FutureConfig config = FutureConfig.init();
+        FutureConfig config = listingExecutor.newJob();
         storeAvatarAndBanner(config, dataDto.getAddress(), dataDto.getAvatarUrl(), dataDto.getBannerUrl());
         switch (dataDto.getType()) {
             case ENUMERABLE -> listNFT(config, dataDto, 0);
@@ -62,32 +70,35 @@ public class NFTService extends AbstractNFTService {
         log.info("Fetching tokens for collection: {} started", dataDto.getAddress());
 
         Collection collection = dbService.storeCollectionIfNotExist(dataDto, startIndex);
+        List<ImageVariant> variants = imageVariants(dataDto);
 
         boolean allStored = false;
         int i = startIndex;
-        String url = null;
         while (!allStored) {
-            try {
-                url = getIpfsFormattedUrl(blockChainService.getTokenURI(dataDto.getAddress(), BigInteger.valueOf(i)));
-            } catch (Exception e) {
-                allStored = true;
-                collection.setTotalSupply(i);
-                collection = dbService.storeCollection(collection);
+            List<CompletableFuture<String>> window = new ArrayList<>();
+            for (int j = i; j < i + blockChainService.getBatchSize(); j++) {
+                window.add(blockChainService.getTokenURIAsync(dataDto.getAddress(), BigInteger.valueOf(j)));
             }
-            try {
-                ListCollectionTokenParams params = new ListCollectionTokenParams(collection.getId(), dataDto.getAddress());
-                params.setIsModifiedTokenName(dataDto.getIsModifiedTokenName());
-                params.setOnlyGif(dataDto.getOnlyGif());
-                params.setTokenId(String.valueOf(i));
-                params.setTokenUrl(url);
-
-                loadAndStoreTokenDataAsync(config, params, new AtomicInteger(0));
-            } catch (Exception e) {
-                log.error("Failed to store token id: {}, url: {}, collectionId: {}. Error message: {}", i, url, collection.getId(), e.getMessage());
+            for (CompletableFuture<String> tokenUri : window) {
+                String url;
+                try {
+                    url = getIpfsFormattedUrl(tokenUri.get());
+                } catch (Exception e) {
+                    allStored = true;
+                    collection.setTotalSupply(i);
+                    collection = dbService.storeCollection(collection);
+                    break;
+                }
+                try {
+                    ListCollectionTokenParams params = tokenParams(collection.getId(), dataDto, variants, String.valueOf(i), url);
+                    loadAndStoreTokenDataAsync(config, params);
+                } catch (Exception e) {
+                    log.error("Failed to store token id: {}, url: {}, collectionId: {}. Error message: {}", i, url, collection.getId(), e.getMessage());
+                }
+                i++;
             }
-            i++;
         }
-        postListActions(config, collection.getId());
+        postListActions(config, collection.getId(), dataDto.getAddress());
     }
 
     public void listNFT(FutureConfig config, CollectionDataDto dataDto, int startIndex) throws ExecutionException, InterruptedException {
@@ -95,35 +106,47 @@ public class NFTService extends AbstractNFTService {
 
         BigInteger totalSupply = blockChainService.getTotalSupply(dataDto.getAddress());
         String collectionId = dbService.storeCollectionIfNotExist(dataDto, totalSupply.intValue()).getId();
+        List<ImageVariant> variants = imageVariants(dataDto);
 
         for (int i = startIndex; i < totalSupply.intValue(); i++) {
-            BigInteger tokenId = null;
-            String url = null;
-            try {
-                tokenId = blockChainService.getTokenId(dataDto.getAddress(), i);
-                url = getIpfsFormattedUrl(blockChainService.getTokenURI(dataDto.getAddress(), tokenId));
-
-                ListCollectionTokenParams params = new ListCollectionTokenParams(collectionId, dataDto.getAddress());
-                params.setIsModifiedTokenName(dataDto.getIsModifiedTokenName());
-                params.setOnlyGif(dataDto.getOnlyGif());
-                params.setTokenId(tokenId.toString());
-                params.setTokenUrl(url);
-
-                loadAndStoreTokenDataAsync(config, params, new AtomicInteger(0));
-            } catch (Exception e) {
-                if (tokenId != null) {
-                    config.addFailedTokenId(tokenId.toString());
-                }
-                log.error("Failed to store token index: {}, id: {}, url: {}, collectionId: {}. Error message: {}", i, tokenId, url, collectionId, e.getMessage());
-            }
+            int index = i;
+            config.addFuture(RESOLVE,
+                    () -> blockChainService.getTokenIdAsync(dataDto.getAddress(), index)
+                            .thenCompose(tokenId -> blockChainService.getTokenURIAsync(dataDto.getAddress(), tokenId)
+                                    .thenApply(uri -> tokenParams(collectionId, dataDto, variants, tokenId.toString(), getIpfsFormattedUrl(uri)))
+                                    .whenComplete((params, e) -> {
+                                        if (e != null) {
+                                            config.addFailedTokenId(tokenId.toString());
+                                        }
+                                    })),
+                    (params, e) -> {
+                        if (e != null) {
+                            log.error("Failed to store token index: {}, collectionId: {}. Error message: {}", index, collectionId, e.getMessage());
+                        } else {
+                            loadAndStoreTokenDataAsync(config, params);
+                        }
+                    });
+        }
+
+        postListActions(config, collectionId, dataDto.getAddress());
+    }
+
+    // Lists the given token ids of an already stored collection, token uris are resolved on the way
+    public void listTokens(FutureConfig config, CollectionDataDto dataDto, String collectionId, Set<String> tokenIds) {
+        log.info("Fetching {} tokens for collection: {} started", tokenIds.size(), dataDto.getAddress());
+
+        List<ImageVariant> variants = imageVariants(dataDto);
+        for (String tokenId : tokenIds) {
+            loadAndStoreTokenDataAsync(config, tokenParams(collectionId, dataDto, variants, tokenId, null));
         }
 
-        postListActions(config, collectionId);
+        postListActions(config, collectionId, dataDto.getAddress());
     }
 
     public boolean deleteCollection(String collectionId) {
         try {
             dbService.deleteCollection(collectionId);
+            tokenResponseCache.invalidateCollection(collectionId);
             return true;
         } catch (Exception ex) {
             throw new ListingException(ex.getMessage());
@@ -134,30 +157,44 @@ public class NFTService extends AbstractNFTService {
         log.info("Fetching tokens for collection: {} started", dataDto.getAddress());
 
         String collectionId = dbService.storeCollectionIfNotExist(dataDto, dataDto.getTotalSupply()).getId();
+        List<ImageVariant> variants = imageVariants(dataDto);
 
         for (int i = startIndex; i < dataDto.getTotalSupply() + startIndex; i++) {
-            String url = null;
-            try {
-                url = getIpfsFormattedUrl(blockChainService.getTokenURI(dataDto.getAddress(), BigInteger.valueOf(i)));
-
-                ListCollectionTokenParams params = new ListCollectionTokenParams(collectionId, dataDto.getAddress());
-                params.setIsModifiedTokenName(dataDto.getIsModifiedTokenName());
-                params.setOnlyGif(dataDto.getOnlyGif());
-                params.setTokenId(String.valueOf(i));
-                params.setTokenUrl(url);
-
-                loadAndStoreTokenDataAsync(config, params, new AtomicInteger(0));
-            } catch (Exception e) {
-                config.addFailedTokenId(String.valueOf(i));
-                log.error("Failed to store token id: {}, url: {}, collectionId: {}. Error message: {}", i, url, collectionId, e.getMessage());
-            }
+            String tokenId = String.valueOf(i);
+            BigInteger index = BigInteger.valueOf(i);
+            config.addFuture(RESOLVE,
+                    () -> blockChainService.getTokenURIAsync(dataDto.getAddress(), index)
+                            .thenApply(uri -> tokenParams(collectionId, dataDto, variants, tokenId, getIpfsFormattedUrl(uri))),
+                    (params, e) -> {
+                        if (e != null) {
+                            config.addFailedTokenId(tokenId);
+                            log.error("Failed to store token id: {}, collectionId: {}. Error message: {}", tokenId, collectionId, e.getMessage());
+                        } else {
+                            loadAndStoreTokenDataAsync(config, params);
+                        }
+                    });
         }
 
-        postListActions(config, collectionId);
+        postListActions(config, collectionId, dataDto.getAddress());
+    }
+
+    // resolved once per job, every token of the collection shares the list
+    private List<ImageVariant> imageVariants(CollectionDataDto dataDto) {
+        return imageService.tokenImageVariants(dataDto.getImageSizes(), dataDto.getImageFormat());
+    }
+
+    private ListCollectionTokenParams tokenParams(String collectionId, CollectionDataDto dataDto, List<ImageVariant> variants, String tokenId, String url) {
+        ListCollectionTokenParams params = new ListCollectionTokenParams(collectionId, dataDto.getAddress());
+        params.setIsModifiedTokenName(dataDto.getIsModifiedTokenName());
+        params.setOnlyGif(dataDto.getOnlyGif());
+        params.setImageVariants(variants);
+        params.setTokenId(tokenId);
+        params.setTokenUrl(url);
+        return params;
     }
 
     private void storeAvatarAndBanner(FutureConfig config, String address, String avatarUrl, String bannerUrl) {
-        config.addFuture(() -> {
+        config.addFuture(IMAGE, () -> {
             if (!avatarUrl.isEmpty()) {
                 imageService.uploadAvatarImage(address, avatarUrl);
             } else {
@@ -172,22 +209,30 @@ public class NFTService extends AbstractNFTService {
     }
 
     //If token 'imagePng' exist we assume that 'image' contain gif
-    private void storeTokenImage(FutureConfig config, AbstractTokenDto tokenData, String collectionAddress, boolean onlyGif) {
-        config.addFuture(() -> {
-            if (onlyGif) {
-                imageService.s3UploadTokenImagesAsync(collectionAddress, tokenData.getImage(), tokenData, config.getTokenIdsFailed(), TokenMetadata.GIF);
+    private void storeTokenImageAndData(FutureConfig config, AbstractTokenDto tokenData, ListCollectionTokenParams params) {
+        String collectionAddress = params.getCollectionAddress();
+        List<ImageVariant> variants = params.getImageVariants() != null
+                ? params.getImageVariants()
+                : imageService.tokenImageVariants(null, null);
+        config.addFuture(IMAGE, () -> {
+            // derivatives are only recorded once the png they come from is uploaded
+            boolean pngUploaded = false;
+            if (Boolean.TRUE.equals(params.getOnlyGif())) {
+                imageService.s3UploadTokenImagesAsync(collectionAddress, tokenData.getImage(), tokenData, config.getTokenIdsFailed(), TokenMetadata.GIF, variants);
                 tokenData.setIsGif(true);
             } else if (Strings.isNotBlank(tokenData.getImagePng())) {
-                imageService.s3UploadTokenImagesAsync(collectionAddress, tokenData.getImagePng(), tokenData, config.getTokenIdsFailed(), TokenMetadata.PNG);
-                imageService.s3UploadTokenImagesAsync(collectionAddress, tokenData.getImage(), tokenData, config.getTokenIdsFailed(), TokenMetadata.GIF);
+                pngUploaded = imageService.s3UploadTokenImagesAsync(collectionAddress, tokenData.getImagePng(), tokenData, config.getTokenIdsFailed(), TokenMetadata.PNG, variants);
+                imageService.s3UploadTokenImagesAsync(collectionAddress, tokenData.getImage(), tokenData, config.getTokenIdsFailed(), TokenMetadata.GIF, variants);
                 tokenData.setIsGif(true);
             } else if (Strings.isNotBlank(tokenData.getGif())) {
-                imageService.s3UploadTokenImagesAsync(collectionAddress, tokenData.getImage(), tokenData, config.getTokenIdsFailed(), TokenMetadata.PNG);
-                imageService.s3UploadTokenImagesAsync(collectionAddress, tokenData.getGif(), tokenData, config.getTokenIdsFailed(), TokenMetadata.GIF);
+                pngUploaded = imageService.s3UploadTokenImagesAsync(collectionAddress, tokenData.getImage(), tokenData, config.getTokenIdsFailed(), TokenMetadata.PNG, variants);
+                imageService.s3UploadTokenImagesAsync(collectionAddress, tokenData.getGif(), tokenData, config.getTokenIdsFailed(), TokenMetadata.GIF, variants);
                 tokenData.setIsGif(true);
             } else {
-                imageService.s3UploadTokenImagesAsync(collectionAddress, tokenData.getImage(), tokenData, config.getTokenIdsFailed(), TokenMetadata.PNG);
+                pngUploaded = imageService.s3UploadTokenImagesAsync(collectionAddress, tokenData.getImage(), tokenData, config.getTokenIdsFailed(), TokenMetadata.PNG, variants);
             }
+            tokenData.setVariants(pngUploaded ? variants : List.of());
+            storeTokenData(config, params.getCollectionId(), tokenData);
         });
     }
 
@@ -198,8 +243,7 @@ public class NFTService extends AbstractNFTService {
             if (params.getIsModifiedTokenName() != null && params.getIsModifiedTokenName()) {
                 tokenData.setName(String.format("%s %s", tokenData.getName(), params.getTokenId()));
             }
-            storeTokenImage(config, tokenData, params.getCollectionAddress(), params.getOnlyGif());
-            storeTokenData(config, params.getCollectionId(), tokenData);
+            storeTokenImageAndData(config, tokenData, params);
         } catch (Exception ex) {
             config.addFailedTokenId(params.getTokenId());
             log.error("Can't parse and store token data from: {}. Token id: {}. Error message: {}", params.getTokenUrl(), params.getTokenId(), ex.getMessage());
@@ -207,10 +251,8 @@ public class NFTService extends AbstractNFTService {
     }
 
     private void storeTokenData(FutureConfig config, String collectionId, AbstractTokenDto tokenData) {
-        config.addFuture(() -> {
-            try {
-                dbService.storeToken(collectionId, tokenData);
-            } catch (Exception e) {
+        config.addFuture(STORE, () -> dbService.storeToken(collectionId, tokenData), (res, e) -> {
+            if (e != null) {
                 config.addFailedTokenId(tokenData.getTokenId());
                 log.error("Can not store token data. Token id: {}, collectionId: {}, Error message: {}", tokenData.getTokenId(), collectionId, e.getMessage());
             }
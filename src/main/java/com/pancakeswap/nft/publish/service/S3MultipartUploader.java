@@ -0,0 +1,194 @@
+package com.pancakeswap.nft.publish.service;
+
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.*;
+import com.pancakeswap.nft.publish.config.Downstream;
+import com.pancakeswap.nft.publish.config.DownstreamLimiter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Streams objects into S3 part by part. The first part is read into a buffer growing with the content, an object
+// that fits in it is put as is. A bigger one goes up as a multipart upload whose next parts take pooled buffers
+// shared by all uploads, so small objects never wait on the pool and its memory stays at part size x buffers.
+@Slf4j
+public class S3MultipartUploader {
+
+    // S3 rejects non-last parts smaller than 5 MB
+    private static final int MIN_PART_SIZE = 5 * 1024 * 1024;
+    private static final int INITIAL_FIRST_PART_SIZE = 64 * 1024;
+
+    private final AmazonS3 s3client;
+    private final DownstreamLimiter downstreamLimiter;
+    private final int partSize;
+    private final int maxBuffers;
+    private final AtomicInteger allocatedBuffers = new AtomicInteger();
+    private final BlockingQueue<byte[]> buffers;
+    private final ExecutorService partUploads;
+
+    public S3MultipartUploader(AmazonS3 s3client, DownstreamLimiter downstreamLimiter, int partSize, int parallelism) {
+        this.s3client = s3client;
+        this.downstreamLimiter = downstreamLimiter;
+        this.partSize = Math.max(partSize, MIN_PART_SIZE);
+        // one buffer per uploading part and one being filled from the download
+        this.maxBuffers = parallelism + 1;
+        this.buffers = new ArrayBlockingQueue<>(maxBuffers);
+        this.partUploads = Executors.newFixedThreadPool(parallelism, r -> {
+            Thread thread = new Thread(r, "s3-part-upload");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public void upload(String bucket, String key, ObjectMetadata metadata, CannedAccessControlList acl, InputStream in) throws IOException {
+        byte[] part = readFirstPart(in);
+        if (part.length < partSize) {
+            metadata.setContentLength(part.length);
+            try (DownstreamLimiter.Permit ignore = downstreamLimiter.acquire(Downstream.S3)) {
+                s3client.putObject(new PutObjectRequest(bucket, key, new ByteArrayInputStream(part), metadata)
+                        .withCannedAcl(acl));
+            }
+            return;
+        }
+
+        String uploadId;
+        try (DownstreamLimiter.Permit ignore = downstreamLimiter.acquire(Downstream.S3)) {
+            uploadId = s3client.initiateMultipartUpload(new InitiateMultipartUploadRequest(bucket, key, metadata).withCannedACL(acl))
+                    .getUploadId();
+        }
+
+        List<Future<PartETag>> parts = new ArrayList<>();
+        try {
+            // the first part is not from the pool and is not given back to it
+            parts.add(submitPart(bucket, key, uploadId, 1, part, part.length, false));
+            int partNumber = 2;
+            int read = part.length;
+            while (read == partSize) {
+                part = takeBuffer();
+                read = readPart(in, part);
+                if (read == 0) {
+                    releaseBuffer(part);
+                    break;
+                }
+                parts.add(submitPart(bucket, key, uploadId, partNumber++, part, read, true));
+            }
+
+            List<PartETag> etags = new ArrayList<>(parts.size());
+            for (Future<PartETag> uploaded : parts) {
+                etags.add(uploaded.get());
+            }
+            try (DownstreamLimiter.Permit ignore = downstreamLimiter.acquire(Downstream.S3)) {
+                s3client.completeMultipartUpload(new CompleteMultipartUploadRequest(bucket, key, uploadId, etags));
+            }
+        } catch (Exception e) {
+            if (e instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
+            // parts already queued still own their buffers, let them finish before the upload is dropped
+            awaitQuietly(parts);
+            abort(bucket, key, uploadId);
+            throw e instanceof IOException io ? io : new IOException(String.format("Multipart upload of %s failed", key), e);
+        }
+    }
+
+    public void shutdown() {
+        partUploads.shutdownNow();
+    }
+
+    private Future<PartETag> submitPart(String bucket, String key, String uploadId, int partNumber, byte[] part, int length, boolean pooled) {
+        try {
+            return partUploads.submit(() -> {
+                try (DownstreamLimiter.Permit ignore = downstreamLimiter.acquire(Downstream.S3)) {
+                    return s3client.uploadPart(new UploadPartRequest()
+                            .withBucketName(bucket)
+                            .withKey(key)
+                            .withUploadId(uploadId)
+                            .withPartNumber(partNumber)
+                            .withPartSize(length)
+                            .withInputStream(new ByteArrayInputStream(part, 0, length))).getPartETag();
+                } finally {
+                    if (pooled) {
+                        releaseBuffer(part);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            if (pooled) {
+                releaseBuffer(part);
+            }
+            throw e;
+        }
+    }
+
+    private static void awaitQuietly(List<Future<PartETag>> parts) {
+        for (Future<PartETag> uploaded : parts) {
+            try {
+                uploaded.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception ignore) {
+            }
+        }
+    }
+
+    // Up to part size bytes in an array of the exact length read, grown by doubling
+    private byte[] readFirstPart(InputStream in) throws IOException {
+        byte[] part = new byte[Math.min(INITIAL_FIRST_PART_SIZE, partSize)];
+        int length = 0;
+        while (true) {
+            int read = in.readNBytes(part, length, part.length - length);
+            length += read;
+            if (length < part.length || length == partSize) {
+                return length == part.length ? part : Arrays.copyOf(part, length);
+            }
+            part = Arrays.copyOf(part, (int) Math.min((long) part.length * 2, partSize));
+        }
+    }
+
+    private int readPart(InputStream in, byte[] part) throws IOException {
+        try {
+            return in.readNBytes(part, 0, part.length);
+        } catch (IOException e) {
+            releaseBuffer(part);
+            throw e;
+        }
+    }
+
+    private void abort(String bucket, String key, String uploadId) {
+        try (DownstreamLimiter.Permit ignore = downstreamLimiter.acquire(Downstream.S3)) {
+            s3client.abortMultipartUpload(new AbortMultipartUploadRequest(bucket, key, uploadId));
+        } catch (Exception e) {
+            log.warn("Failed to abort multipart upload of {}: {}", key, e.getMessage());
+        }
+    }
+
+    // buffers are allocated on demand up to the limit, then recycled
+    private byte[] takeBuffer() throws InterruptedIOException {
+        byte[] buffer = buffers.poll();
+        if (buffer != null) {
+            return buffer;
+        }
+        if (allocatedBuffers.getAndUpdate(n -> n < maxBuffers ? n + 1 : n) < maxBuffers) {
+            return new byte[partSize];
+        }
+        try {
+            return buffers.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for a part buffer");
+        }
+    }
+
+    private void releaseBuffer(byte[] buffer) {
+        buffers.offer(buffer);
+    }
+}
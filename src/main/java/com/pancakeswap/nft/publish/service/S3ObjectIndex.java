@@ -0,0 +1,83 @@
+package com.pancakeswap.nft.publish.service;
+
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.ListObjectsV2Request;
+import com.amazonaws.services.s3.model.ListObjectsV2Result;
+import com.pancakeswap.nft.publish.config.Downstream;
+import com.pancakeswap.nft.publish.config.DownstreamLimiter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Filenames stored under a collection prefix, listed once per job instead of a request per object.
+// Uploads of the job are added as they go, the index is dropped when the job releases the collection.
+@Slf4j
+public class S3ObjectIndex {
+
+    // index of a prefix whose listing failed, the rest of the job checks objects one by one
+    private static final Set<String> UNLISTED = Collections.unmodifiableSet(new HashSet<>());
+
+    private final AmazonS3 s3client;
+    private final DownstreamLimiter downstreamLimiter;
+    private final String bucket;
+    private final Map<String, Set<String>> indexes = new ConcurrentHashMap<>();
+
+    public S3ObjectIndex(AmazonS3 s3client, DownstreamLimiter downstreamLimiter, String bucket) {
+        this.s3client = s3client;
+        this.downstreamLimiter = downstreamLimiter;
+        this.bucket = bucket;
+    }
+
+    public boolean exist(String prefix, List<String> filenames) {
+        Set<String> index = index(prefix);
+        if (index == null) {
+            try (DownstreamLimiter.Permit ignore = downstreamLimiter.acquire(Downstream.S3)) {
+                return filenames.stream().allMatch(filename -> s3client.doesObjectExist(bucket, prefix + filename));
+            }
+        }
+        return index.containsAll(filenames);
+    }
+
+    public void uploaded(String prefix, String filename) {
+        Set<String> index = indexes.get(prefix);
+        if (index != null && index != UNLISTED) {
+            index.add(filename);
+        }
+    }
+
+    public void release(String prefix) {
+        indexes.remove(prefix);
+    }
+
+    // Null when listing failed
+    private Set<String> index(String prefix) {
+        Set<String> index = indexes.computeIfAbsent(prefix, this::listObjects);
+        return index == UNLISTED ? null : index;
+    }
+
+    private Set<String> listObjects(String prefix) {
+        Set<String> filenames = ConcurrentHashMap.newKeySet();
+        ListObjectsV2Request request = new ListObjectsV2Request()
+                .withBucketName(bucket)
+                .withPrefix(prefix)
+                .withMaxKeys(1000);
+        try (DownstreamLimiter.Permit ignore = downstreamLimiter.acquire(Downstream.S3)) {
+            ListObjectsV2Result result;
+            do {
+                result = s3client.listObjectsV2(request);
+                result.getObjectSummaries().forEach(o -> filenames.add(o.getKey().substring(prefix.length())));
+                request.setContinuationToken(result.getNextContinuationToken());
+            } while (result.isTruncated());
+        } catch (Exception e) {
+            log.error("Failed to list objects under {}, falling back to per object checks. Error: {}", prefix, e.getMessage());
+            return UNLISTED;
+        }
+        log.info("Indexed {} objects under {}", filenames.size(), prefix);
+        return filenames;
+    }
+}
@@ -0,0 +1,224 @@
+package com.pancakeswap.nft.publish.service;
+
+import com.mongodb.bulk.BulkWriteError;
+import com.pancakeswap.nft.publish.config.Downstream;
+import com.pancakeswap.nft.publish.config.DownstreamLimiter;
+import com.pancakeswap.nft.publish.exception.ListingException;
+import com.pancakeswap.nft.publish.model.dto.AbstractTokenDto;
+import com.pancakeswap.nft.publish.model.entity.Metadata;
+import com.pancakeswap.nft.publish.model.entity.Token;
+import com.pancakeswap.nft.publish.model.entity.TokenTrait;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+import static org.springframework.data.mongodb.core.query.Query.query;
+
+// Write-behind store of listed tokens. Tokens are queued and flushed by size or by interval,
+// every flush writes metadata and tokens of a collection with a few bulk round trips.
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class TokenBulkWriter {
+
+    private final MongoTemplate mongoTemplate;
+    private final AttributeService attributeService;
+    private final DownstreamLimiter downstreamLimiter;
+
+    @Value("${nft.db.bulk.size:500}")
+    private Integer bulkSize;
+    @Value("${nft.db.bulk.flush.interval:500}")
+    private Long flushInterval;
+    @Value("${nft.tokens.traits.enabled:false}")
+    private Boolean traitsEnabled;
+
+    private final BlockingQueue<PendingToken> pending = new LinkedBlockingQueue<>();
+    private final AtomicBoolean flushRequested = new AtomicBoolean(false);
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "token-bulk-writer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @PostConstruct
+    public void init() {
+        try {
+            mongoTemplate.indexOps(Token.class).ensureIndex(new Index()
+                    .on("parent_collection", Sort.Direction.ASC)
+                    .on("token_id", Sort.Direction.ASC));
+        } catch (Exception e) {
+            log.warn("Can not ensure tokens parent_collection/token_id index: {}", e.getMessage());
+        }
+        scheduler.scheduleWithFixedDelay(this::flush, flushInterval, flushInterval, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        scheduler.shutdown();
+        if (scheduler.awaitTermination(30, TimeUnit.SECONDS)) {
+            flush();
+        } else {
+            scheduler.shutdownNow();
+            List<PendingToken> left = new ArrayList<>();
+            pending.drainTo(left);
+            left.forEach(t -> t.result().completeExceptionally(new CancellationException("Token writer is shut down")));
+        }
+    }
+
+    public CompletableFuture<Void> store(String collectionId, AbstractTokenDto tokenDataDto) {
+        PendingToken token = new PendingToken(collectionId, tokenDataDto, new CompletableFuture<>());
+        pending.add(token);
+        if (pending.size() >= bulkSize && flushRequested.compareAndSet(false, true)) {
+            try {
+                scheduler.execute(this::flush);
+            } catch (RejectedExecutionException e) {
+                flushRequested.set(false);
+            }
+        }
+        return token.result();
+    }
+
+    private void flush() {
+        flushRequested.set(false);
+        List<PendingToken> tokens = new ArrayList<>(bulkSize);
+        while (pending.drainTo(tokens, bulkSize) > 0) {
+            Map<String, List<PendingToken>> byCollection = new LinkedHashMap<>();
+            tokens.forEach(t -> byCollection.computeIfAbsent(t.collectionId(), k -> new ArrayList<>()).add(t));
+            byCollection.forEach((collectionId, collectionTokens) -> {
+                try (DownstreamLimiter.Permit ignore = downstreamLimiter.acquire(Downstream.MONGO)) {
+                    write(collectionId, collectionTokens);
+                } catch (Exception e) {
+                    log.error("Failed to write {} tokens of collection {}", collectionTokens.size(), collectionId, e);
+                    collectionTokens.forEach(t -> t.result().completeExceptionally(e));
+                }
+            });
+            tokens = new ArrayList<>(bulkSize);
+        }
+    }
+
+    private void write(String collectionId, List<PendingToken> tokens) {
+        ObjectId parentCollection = new ObjectId(collectionId);
+        Date now = new Date();
+
+        // the last write of a token id wins, earlier ones in the same flush complete together with it
+        Map<String, List<PendingToken>> byTokenId = new LinkedHashMap<>();
+        Map<String, List<TokenTrait>> traitsByTokenId = new HashMap<>();
+        for (PendingToken token : tokens) {
+            AbstractTokenDto dto = token.tokenDataDto();
+            List<TokenTrait> traits;
+            try {
+                validate(dto);
+                traits = attributeService.storeTraits(collectionId, AttributeService.attributesOf(dto));
+            } catch (Exception e) {
+                token.result().completeExceptionally(e);
+                continue;
+            }
+            byTokenId.computeIfAbsent(dto.getTokenId(), k -> new ArrayList<>()).add(token);
+            traitsByTokenId.put(dto.getTokenId(), traits);
+        }
+        if (byTokenId.isEmpty()) {
+            return;
+        }
+
+        Query existedQuery = query(where("parent_collection").is(parentCollection).and("token_id").in(byTokenId.keySet()));
+        existedQuery.fields().include("token_id").include("metadata");
+        Map<String, ObjectId> metadataIds = new HashMap<>();
+        mongoTemplate.find(existedQuery, Token.class).forEach(t -> {
+            if (t.getMetadata() != null) {
+                metadataIds.put(t.getTokenId(), t.getMetadata());
+            }
+        });
+
+        List<String> tokenIds = new ArrayList<>(byTokenId.keySet());
+        BulkOperations metadataOps = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, Metadata.class);
+        for (String tokenId : tokenIds) {
+            AbstractTokenDto dto = last(byTokenId.get(tokenId)).tokenDataDto();
+            ObjectId metadataId = metadataIds.computeIfAbsent(tokenId, k -> new ObjectId());
+            metadataOps.upsert(query(where("_id").is(metadataId)), new Update()
+                    .set("name", dto.getName())
+                    .set("description", dto.getDescription())
+                    .set("gif", Boolean.TRUE.equals(dto.getIsGif()))
+                    .set("mp4", Boolean.TRUE.equals(dto.getIsMp4()))
+                    .set("webm", Boolean.TRUE.equals(dto.getIsWebm()))
+                    .set("variants", dto.getVariants())
+                    .set("updated_at", now)
+                    .setOnInsert("parent_collection", parentCollection)
+                    .setOnInsert("created_at", now));
+        }
+        Set<String> failed = new HashSet<>(execute(metadataOps, tokenIds, byTokenId));
+
+        List<String> toStore = tokenIds.stream().filter(id -> !failed.contains(id)).toList();
+        BulkOperations tokenOps = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, Token.class);
+        for (String tokenId : toStore) {
+            List<TokenTrait> traits = traitsByTokenId.get(tokenId);
+            Update update = new Update()
+                    .set("metadata", metadataIds.get(tokenId))
+                    .set("attributes", traits.stream().map(TokenTrait::getAttribute).toList())
+                    .set("updated_at", now)
+                    // burns come from the Transfer logs, a relisted token keeps its state
+                    .setOnInsert("burned", false)
+                    .setOnInsert("created_at", now);
+            if (traitsEnabled) {
+                update.set("traits", traits);
+            } else {
+                update.unset("traits");
+            }
+            tokenOps.upsert(query(where("parent_collection").is(parentCollection).and("token_id").is(tokenId)), update);
+        }
+        if (!toStore.isEmpty()) {
+            failed.addAll(execute(tokenOps, toStore, byTokenId));
+        }
+
+        toStore.stream().filter(id -> !failed.contains(id))
+                .forEach(id -> byTokenId.get(id).forEach(t -> t.result().complete(null)));
+    }
+
+    // Runs the bulk, fails tokens of the rejected operations and returns their ids
+    private List<String> execute(BulkOperations ops, List<String> tokenIds, Map<String, List<PendingToken>> byTokenId) {
+        try {
+            ops.execute();
+            return List.of();
+        } catch (BulkOperationException e) {
+            List<String> failed = new ArrayList<>();
+            for (BulkWriteError error : e.getErrors()) {
+                String tokenId = tokenIds.get(error.getIndex());
+                failed.add(tokenId);
+                ListingException ex = new ListingException(error.getMessage());
+                byTokenId.get(tokenId).forEach(t -> t.result().completeExceptionally(ex));
+            }
+            return failed;
+        }
+    }
+
+    private static void validate(AbstractTokenDto dto) {
+        if (dto.getTokenId() == null) {
+            throw new ListingException("token token_id cant not be null");
+        }
+        if (dto.getName() == null) {
+            throw new ListingException("metadata name cant not be null");
+        }
+    }
+
+    private static PendingToken last(List<PendingToken> tokens) {
+        return tokens.get(tokens.size() - 1);
+    }
+
+    private record PendingToken(String collectionId, AbstractTokenDto tokenDataDto, CompletableFuture<Void> result) {
+    }
+}
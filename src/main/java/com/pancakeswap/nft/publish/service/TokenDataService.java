@@ -1,34 +1,256 @@
 package com.pancakeswap.nft.publish.service;
 
+import com.pancakeswap.nft.publish.exception.ListingException;
+import com.pancakeswap.nft.publish.service.cache.IpfsBlobCache;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
-import java.io.IOException;
+import javax.annotation.PreDestroy;
 import java.net.URI;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
 import java.time.Duration;
+import java.time.Instant;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
 
+// Fetches token metadata without blocking a thread. Requests to a host are capped, the ones over the cap wait
+// in the host queue. Failed requests are retried with exponential backoff and jitter scheduled on a timer,
+// a 429 pauses the host for as long as its Retry-After asks.
 @Service
 @Slf4j
 public class TokenDataService {
 
+    private static final Duration REQUEST_TIMEOUT = Duration.ofSeconds(3);
+    private static final long MAX_RETRY_AFTER = TimeUnit.MINUTES.toMillis(5);
+
     private final HttpClient client;
+    private final IpfsGatewayPool gatewayPool;
+    private final IpfsBlobCache blobCache;
+
+    @Value("${nft.metadata.host.max.concurrency:16}")
+    private Integer hostMaxConcurrency;
+    @Value("${nft.metadata.max.attempts:10}")
+    private Integer maxAttempts;
+    @Value("${nft.metadata.retry.base.delay:250}")
+    private Long retryBaseDelay;
+    @Value("${nft.metadata.retry.max.delay:30000}")
+    private Long retryMaxDelay;
 
-    public TokenDataService() {
+    private final Map<String, HostQueue> hosts = new ConcurrentHashMap<>();
+    // only starts requests, retries and hedges, never blocks
+    private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "token-data-timer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public TokenDataService(IpfsGatewayPool gatewayPool, IpfsBlobCache blobCache) {
+        this.gatewayPool = gatewayPool;
+        this.blobCache = blobCache;
         client = HttpClient.newBuilder()
                 .connectTimeout(Duration.ofSeconds(2))
                 .followRedirects(HttpClient.Redirect.NORMAL)
                 .build();
     }
 
-    public HttpResponse<String> call(String url) throws IOException, InterruptedException {
-        HttpRequest request = HttpRequest.newBuilder()
-                .uri(URI.create(url))
-                .timeout(Duration.ofSeconds(3))
-                .build();
+    @PreDestroy
+    public void shutdown() {
+        timer.shutdownNow();
+    }
+
+    // Completes with the body of the first 200 response, or fails once the attempts are used up.
+    // Every attempt of an ipfs url goes to the gateway the pool picks at that moment, ipfs content cached on disk
+    // is not fetched again
+    public CompletableFuture<String> fetch(String url) {
+        String cached = blobCache.getString(url);
+        if (cached != null) {
+            return CompletableFuture.completedFuture(cached);
+        }
+        CompletableFuture<String> result = new CompletableFuture<>();
+        attempt(url, 1, result);
+        return result;
+    }
+
+    private void attempt(String url, int attempt, CompletableFuture<String> result) {
+        CompletableFuture<HttpResponse<String>> response;
+        try {
+            response = gatewayPool.request(url, this::send, res -> res.statusCode() == 200, timer);
+        } catch (Exception e) {
+            response = CompletableFuture.failedFuture(e);
+        }
+        response.whenComplete((res, e) -> handle(url, attempt, result, res, e));
+    }
+
+    private CompletableFuture<HttpResponse<String>> send(String url) {
+        URI uri = URI.create(url);
+        HostQueue host = hosts.computeIfAbsent(String.valueOf(uri.getHost()), k -> new HostQueue());
+        CompletableFuture<HttpResponse<String>> response = new CompletableFuture<>();
+        host.submit(() -> {
+            // abandoned while waiting, e.g. the hedge on another gateway already won
+            if (response.isDone()) {
+                host.release();
+                return;
+            }
+            HttpRequest request = HttpRequest.newBuilder()
+                    .uri(uri)
+                    .timeout(REQUEST_TIMEOUT)
+                    .build();
+            CompletableFuture<HttpResponse<String>> sent;
+            try {
+                sent = client.sendAsync(request, HttpResponse.BodyHandlers.ofString());
+            } catch (Exception e) {
+                sent = CompletableFuture.failedFuture(e);
+            }
+            CompletableFuture<HttpResponse<String>> exchange = sent;
+            // cancelling the response aborts the exchange, its slot frees up right away
+            response.whenComplete((res, e) -> {
+                if (response.isCancelled()) {
+                    exchange.cancel(true);
+                }
+            });
+            sent.whenComplete((res, e) -> {
+                // a 429 pauses the host before its slot frees up
+                try {
+                    if (e == null && res.statusCode() == 429) {
+                        host.pause(retryAfter(res));
+                    }
+                } finally {
+                    host.release();
+                }
+                if (e != null) {
+                    response.completeExceptionally(e);
+                } else {
+                    response.complete(res);
+                }
+            });
+        });
+        return response;
+    }
+
+    private void handle(String url, int attempt, CompletableFuture<String> result, HttpResponse<String> res, Throwable e) {
+        if (e == null && res.statusCode() == 200) {
+            blobCache.putString(url, res.body());
+            result.complete(res.body());
+            return;
+        }
+        String reason = e != null ? describe(rootCause(e)) : "Response code: " + res.statusCode();
+        if (attempt >= maxAttempts) {
+            result.completeExceptionally(new ListingException(String.format("Attempt: %d. Error message: %s", attempt, reason)));
+            return;
+        }
+
+        long delay = backoff(attempt);
+        if (e == null && res.statusCode() == 429) {
+            delay = Math.max(delay, retryAfter(res));
+        }
+        log.debug("Retrying {} in {} ms, attempt: {}. Reason: {}", url, delay, attempt, reason);
+        try {
+            timer.schedule(() -> attempt(url, attempt + 1, result), delay, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException ex) {
+            result.completeExceptionally(ex);
+        }
+    }
+
+    // exponential with equal jitter: half of the step is fixed, the other half random
+    private long backoff(int attempt) {
+        long step = Math.min(retryMaxDelay, retryBaseDelay << Math.min(attempt - 1, 20));
+        return step / 2 + ThreadLocalRandom.current().nextLong(step / 2 + 1);
+    }
+
+    // Retry-After holds either seconds or an http date
+    private static long retryAfter(HttpResponse<?> res) {
+        return res.headers().firstValue("Retry-After").map(value -> {
+            try {
+                return TimeUnit.SECONDS.toMillis(Long.parseLong(value.trim()));
+            } catch (NumberFormatException ignore) {
+            }
+            try {
+                return Duration.between(Instant.now(), ZonedDateTime.parse(value.trim(), DateTimeFormatter.RFC_1123_DATE_TIME)).toMillis();
+            } catch (Exception ignore) {
+                return 0L;
+            }
+        }).map(delay -> Math.min(Math.max(delay, 0), MAX_RETRY_AFTER)).orElse(0L);
+    }
+
+    private static String describe(Throwable e) {
+        return e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName();
+    }
+
+    private static Throwable rootCause(Throwable e) {
+        while ((e instanceof CompletionException || e instanceof ExecutionException) && e.getCause() != null) {
+            e = e.getCause();
+        }
+        return e;
+    }
+
+    // Requests in flight to one host, the ones over the cap or sent while the host is paused wait in order
+    private class HostQueue {
+        private final Deque<Runnable> waiting = new ArrayDeque<>();
+        private int active;
+        private long pausedUntil = System.nanoTime();
+        private boolean resumeScheduled;
+
+        void submit(Runnable request) {
+            synchronized (this) {
+                waiting.add(request);
+            }
+            drain();
+        }
+
+        void release() {
+            synchronized (this) {
+                active--;
+            }
+            drain();
+        }
+
+        void pause(long millis) {
+            synchronized (this) {
+                long until = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(millis);
+                if (until - pausedUntil > 0) {
+                    pausedUntil = until;
+                }
+            }
+        }
+
+        // requests are started on the timer, a response completing inline never recurses into the next request
+        private void drain() {
+            List<Runnable> ready = new ArrayList<>();
+            long paused;
+            synchronized (this) {
+                paused = pausedUntil - System.nanoTime();
+                if (paused > 0) {
+                    if (resumeScheduled || waiting.isEmpty()) {
+                        return;
+                    }
+                    resumeScheduled = true;
+                } else {
+                    while (active < hostMaxConcurrency && !waiting.isEmpty()) {
+                        active++;
+                        ready.add(waiting.poll());
+                    }
+                }
+            }
+            if (paused > 0) {
+                timer.schedule(this::resume, paused, TimeUnit.NANOSECONDS);
+            }
+            ready.forEach(timer::execute);
+        }
 
-        return client.send(request, HttpResponse.BodyHandlers.ofString());
+        private void resume() {
+            synchronized (this) {
+                resumeScheduled = false;
+            }
+            drain();
+        }
     }
 }
@@ -8,7 +8,9 @@ public enum TokenMetadata {
     PNG("png", "image/png"),
     GIF("gif", "image/gif"),
     MP4("mp4", "video/mp4"),
-    WEBM("webm", "video/webm");
+    WEBM("webm", "video/webm"),
+    WEBP("webp", "image/webp"),
+    AVIF("avif", "image/avif");
 
     private final String type;
     private final String contentType;
@@ -17,4 +19,13 @@ public enum TokenMetadata {
         this.type = type;
         this.contentType = contentType;
     }
+
+    public static TokenMetadata fromType(String type) {
+        for (TokenMetadata metadata : values()) {
+            if (metadata.type.equals(type)) {
+                return metadata;
+            }
+        }
+        return null;
+    }
 }
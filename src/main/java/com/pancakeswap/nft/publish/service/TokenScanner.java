@@ -0,0 +1,74 @@
+package com.pancakeswap.nft.publish.service;
+
+import com.pancakeswap.nft.publish.model.entity.Token;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.types.ObjectId;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import java.util.List;
+import java.util.function.Consumer;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+
+// Streams the tokens of a collection page by page in _id order. Every page starts after the last _id of the
+// previous one, so a page costs one index seek whatever its position and only one page is held in memory.
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class TokenScanner {
+
+    private final MongoTemplate mongoTemplate;
+
+    @PostConstruct
+    public void init() {
+        try {
+            mongoTemplate.indexOps(Token.class).ensureIndex(new Index()
+                    .on("parent_collection", Sort.Direction.ASC)
+                    .on("_id", Sort.Direction.ASC));
+        } catch (Exception e) {
+            log.warn("Can not ensure tokens parent_collection/_id index: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Passes every token of the collection to {@code consumer}, {@code pageSize} at a time. Only the given
+     * fields (and _id) are loaded, all of them when none is given. Tokens inserted while scanning are seen
+     * when their _id sorts after the current page.
+     *
+     * @return number of tokens scanned
+     */
+    public long scan(ObjectId parentCollection, int pageSize, Consumer<List<Token>> consumer, String... fields) {
+        long scanned = 0;
+        ObjectId after = null;
+        while (true) {
+            Criteria criteria = where("parent_collection").is(parentCollection);
+            if (after != null) {
+                criteria.and("_id").gt(after);
+            }
+            Query page = Query.query(criteria)
+                    .with(Sort.by(Sort.Direction.ASC, "_id"))
+                    .limit(pageSize);
+            for (String field : fields) {
+                page.fields().include(field);
+            }
+
+            List<Token> tokens = mongoTemplate.find(page, Token.class);
+            if (tokens.isEmpty()) {
+                return scanned;
+            }
+            scanned += tokens.size();
+            after = new ObjectId(tokens.get(tokens.size() - 1).getId());
+            consumer.accept(tokens);
+            if (tokens.size() < pageSize) {
+                return scanned;
+            }
+        }
+    }
+}
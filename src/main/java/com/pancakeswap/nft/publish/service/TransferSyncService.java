@@ -0,0 +1,155 @@
+package com.pancakeswap.nft.publish.service;
+
+import com.pancakeswap.nft.publish.config.Downstream;
+import com.pancakeswap.nft.publish.config.DownstreamLimiter;
+import com.pancakeswap.nft.publish.model.entity.Token;
+import com.pancakeswap.nft.publish.model.sc.LogField;
+import com.pancakeswap.nft.publish.model.sc.TransferEvent;
+import com.pancakeswap.nft.publish.model.sc.TransferFilter;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.util.*;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+import static org.springframework.data.mongodb.core.query.Query.query;
+
+// Reads Transfer logs of a collection in block ranges of node.logs.block.range. A range the node rejects
+// (too many results, range too wide) is halved until it goes through. Burns, and owners when tracked,
+// are applied to the tokens in bulk.
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class TransferSyncService {
+
+    private static final Comparator<TransferEvent> LOG_ORDER = Comparator
+            .comparing(TransferEvent::getBlockNumber)
+            .thenComparing(TransferEvent::getLogIndex);
+
+    private final BlockChainService blockChainService;
+    private final MongoTemplate mongoTemplate;
+    private final DownstreamLimiter downstreamLimiter;
+
+    @Value("${node.logs.block.range:5000}")
+    private Integer blockRange;
+    // blocks behind the head left out, so a reorg can't drop synced logs
+    @Value("${node.logs.confirmations:15}")
+    private Integer confirmations;
+    // every transfer is read instead of mints and burns only
+    @Value("${nft.tokens.owner.tracking:false}")
+    private Boolean ownerTracking;
+    @Value("${nft.db.bulk.size:500}")
+    private Integer bulkSize;
+
+    public BigInteger confirmedHead() throws IOException {
+        return blockChainService.getBlockNumber().subtract(BigInteger.valueOf(confirmations)).max(BigInteger.ZERO);
+    }
+
+    // Mints and burns of the collection in the block range, every transfer with owner tracking, in log order
+    public List<TransferEvent> scanTransfers(String collectionAddress, BigInteger fromBlock, BigInteger toBlock) throws IOException {
+        List<TransferEvent> events;
+        if (ownerTracking) {
+            events = scan(collectionAddress, fromBlock, toBlock, TransferFilter.ALL);
+        } else {
+            events = scan(collectionAddress, fromBlock, toBlock, TransferFilter.MINTS);
+            events.addAll(scan(collectionAddress, fromBlock, toBlock, TransferFilter.BURNS));
+        }
+        events.sort(LOG_ORDER);
+        return events;
+    }
+
+    public List<TransferEvent> scan(String collectionAddress, BigInteger fromBlock, BigInteger toBlock, TransferFilter filter) throws IOException {
+        return scan(collectionAddress, fromBlock, toBlock, (start, end) -> blockChainService.getTransferEvents(collectionAddress, start, end, filter));
+    }
+
+    // Values of the field of one event of the contract, see BlockChainService.getEventValues
+    public List<BigInteger> scanEventValues(String contractAddress, String eventSignature, LogField field, BigInteger fromBlock, BigInteger toBlock) throws IOException {
+        return scan(contractAddress, fromBlock, toBlock, (start, end) -> blockChainService.getEventValues(contractAddress, eventSignature, field, start, end));
+    }
+
+    private <T> List<T> scan(String collectionAddress, BigInteger fromBlock, BigInteger toBlock, RangeReader<T> reader) throws IOException {
+        List<T> events = new ArrayList<>();
+        long range = blockRange;
+        BigInteger start = fromBlock;
+        while (start.compareTo(toBlock) <= 0) {
+            BigInteger end = start.add(BigInteger.valueOf(range - 1)).min(toBlock);
+            try {
+                events.addAll(reader.read(start, end));
+                start = end.add(BigInteger.ONE);
+            } catch (IOException e) {
+                // halved from the span sent, the last range of a scan is often shorter than the configured one
+                long sent = end.subtract(start).longValueExact() + 1;
+                if (sent == 1) {
+                    throw e;
+                }
+                range = sent / 2;
+                log.warn("eth_getLogs {}-{} of {} failed, retrying with {} blocks. Error: {}", start, end, collectionAddress, range, e.getMessage());
+            }
+        }
+        return events;
+    }
+
+    /**
+     * Applies the final state of every token in the events (in log order) to the listed tokens: burned when
+     * the last transfer is to the zero address, otherwise the receiver is the owner. Without owner tracking
+     * only tokens with a burn in the events are written. Tokens not listed yet are left out.
+     *
+     * @return number of tokens burned by the events
+     */
+    public int applyTransfers(String collectionId, List<TransferEvent> events) {
+        Map<BigInteger, TransferEvent> last = new LinkedHashMap<>();
+        Set<BigInteger> withBurn = new HashSet<>();
+        for (TransferEvent event : events) {
+            last.put(event.getTokenId(), event);
+            if (event.isBurn()) {
+                withBurn.add(event.getTokenId());
+            }
+        }
+
+        ObjectId parentCollection = new ObjectId(collectionId);
+        Date now = new Date();
+        int burned = 0;
+        List<Update> updates = new ArrayList<>();
+        List<String> tokenIds = new ArrayList<>();
+        for (TransferEvent event : last.values()) {
+            if (!ownerTracking && !withBurn.contains(event.getTokenId())) {
+                continue;
+            }
+            Update update = new Update()
+                    .set("burned", event.isBurn())
+                    .set("updated_at", now);
+            if (ownerTracking) {
+                update.set("owner", event.isBurn() ? null : event.getTo());
+            }
+            if (event.isBurn()) {
+                burned++;
+            }
+            updates.add(update);
+            tokenIds.add(event.getTokenId().toString());
+        }
+
+        for (int from = 0; from < updates.size(); from += bulkSize) {
+            int to = Math.min(from + bulkSize, updates.size());
+            BulkOperations ops = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, Token.class);
+            for (int i = from; i < to; i++) {
+                ops.updateOne(query(where("parent_collection").is(parentCollection).and("token_id").is(tokenIds.get(i))), updates.get(i));
+            }
+            try (DownstreamLimiter.Permit ignore = downstreamLimiter.acquire(Downstream.MONGO)) {
+                ops.execute();
+            }
+        }
+        return burned;
+    }
+
+    private interface RangeReader<T> {
+        List<T> read(BigInteger fromBlock, BigInteger toBlock) throws IOException;
+    }
+}
@@ -0,0 +1,215 @@
+package com.pancakeswap.nft.publish.service.cache;
+
+import com.pancakeswap.nft.publish.service.ImageContentService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+import static com.pancakeswap.nft.publish.util.UrlUtil.getIpfsPath;
+
+// On disk cache of ipfs content, keyed by the cid path of the url, so immutable content is fetched once across
+// relists and restarts. Disabled unless nft.ipfs.cache.dir is set. Files are written to a temp file and moved in
+// place, the least recently used ones are deleted over the size cap. After a restart the write time stands in for
+// the last access.
+@Slf4j
+@Service
+public class IpfsBlobCache {
+
+    private static final String TMP_SUFFIX = ".tmp";
+
+    @Value("${nft.ipfs.cache.dir:}")
+    private String dir;
+    @Value("${nft.ipfs.cache.max.bytes:10737418240}")
+    private Long maxBytes;
+
+    private Path root;
+    // file name -> size, in access order
+    private final LinkedHashMap<String, Long> entries = new LinkedHashMap<>(1024, 0.75f, true);
+    private long totalBytes;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    @PostConstruct
+    public void init() throws IOException {
+        if (dir.isBlank()) {
+            return;
+        }
+        root = Files.createDirectories(Paths.get(dir));
+        List<Entry> existing = new ArrayList<>();
+        try (Stream<Path> files = Files.walk(root, 2)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+                if (!attributes.isRegularFile()) {
+                    continue;
+                }
+                if (file.getFileName().toString().endsWith(TMP_SUFFIX)) {
+                    Files.deleteIfExists(file);
+                } else {
+                    existing.add(new Entry(file.getFileName().toString(), attributes.size(), attributes.lastModifiedTime().toMillis()));
+                }
+            }
+        }
+        existing.sort(Comparator.comparingLong(Entry::modified));
+        synchronized (this) {
+            existing.forEach(e -> {
+                entries.put(e.name(), e.size());
+                totalBytes += e.size();
+            });
+        }
+        evict();
+        log.info("IPFS blob cache at {}: {} files, {} bytes", root, entries.size(), totalBytes);
+    }
+
+    public boolean isEnabled() {
+        return root != null;
+    }
+
+    public String getString(String url) {
+        Path file = lookup(url);
+        if (file == null) {
+            return null;
+        }
+        try {
+            return Files.readString(file, StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            return missing(file);
+        }
+    }
+
+    // Copies the cached content to the stream, false when it's not cached
+    public boolean copyTo(String url, OutputStream out) throws IOException {
+        Path file = lookup(url);
+        if (file == null) {
+            return false;
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            long position = 0;
+            WritableByteChannel target = Channels.newChannel(out);
+            while (position < size) {
+                position += channel.transferTo(position, size - position, target);
+            }
+            return true;
+        } catch (NoSuchFileException e) {
+            missing(file);
+            return false;
+        }
+    }
+
+    public void putString(String url, String content) {
+        put(url, out -> out.write(content.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    public void put(String url, ContentWriter writer) {
+        String path = root == null ? null : getIpfsPath(url);
+        if (path == null) {
+            return;
+        }
+        String name = fileName(path);
+        Path file = file(name);
+        Path tmp = file.resolveSibling(name + "." + Thread.currentThread().getId() + TMP_SUFFIX);
+        try {
+            Files.createDirectories(file.getParent());
+            try (OutputStream out = Files.newOutputStream(tmp)) {
+                writer.write(out);
+            }
+            long size = Files.size(tmp);
+            Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            synchronized (this) {
+                Long previous = entries.put(name, size);
+                totalBytes += size - (previous != null ? previous : 0);
+            }
+            evict();
+        } catch (IOException e) {
+            log.warn("Failed to cache {}: {}", url, e.getMessage());
+            try {
+                Files.deleteIfExists(tmp);
+            } catch (IOException ignore) {
+            }
+        }
+    }
+
+    public String stats() {
+        synchronized (this) {
+            return String.format("files: %d, bytes: %d, hits: %d, misses: %d", entries.size(), totalBytes, hits.get(), misses.get());
+        }
+    }
+
+    private Path lookup(String url) {
+        String path = root == null ? null : getIpfsPath(url);
+        if (path == null) {
+            return null;
+        }
+        String name = fileName(path);
+        boolean cached;
+        synchronized (this) {
+            cached = entries.get(name) != null;
+        }
+        (cached ? hits : misses).incrementAndGet();
+        return cached ? file(name) : null;
+    }
+
+    // evicted between the lookup and the read
+    private String missing(Path file) {
+        synchronized (this) {
+            Long size = entries.remove(file.getFileName().toString());
+            if (size != null) {
+                totalBytes -= size;
+            }
+        }
+        return null;
+    }
+
+    private void evict() {
+        List<String> evicted = new ArrayList<>();
+        synchronized (this) {
+            Iterator<Map.Entry<String, Long>> eldest = entries.entrySet().iterator();
+            while (totalBytes > maxBytes && eldest.hasNext()) {
+                Map.Entry<String, Long> entry = eldest.next();
+                totalBytes -= entry.getValue();
+                evicted.add(entry.getKey());
+                eldest.remove();
+            }
+        }
+        for (String name : evicted) {
+            try {
+                Files.deleteIfExists(file(name));
+            } catch (IOException e) {
+                log.warn("Failed to evict {} from the blob cache: {}", name, e.getMessage());
+            }
+        }
+    }
+
+    private Path file(String name) {
+        return root.resolve(name.substring(0, 2)).resolve(name);
+    }
+
+    private static String fileName(String ipfsPath) {
+        return ImageContentService.hex(ImageContentService.sha256().digest(ipfsPath.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    public interface ContentWriter {
+        void write(OutputStream out) throws IOException;
+    }
+
+    private record Entry(String name, long size, long modified) {
+    }
+}
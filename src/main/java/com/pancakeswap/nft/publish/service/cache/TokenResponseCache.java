@@ -0,0 +1,51 @@
+package com.pancakeswap.nft.publish.service.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+
+import static java.util.concurrent.TimeUnit.MINUTES;
+
+@Service
+public class TokenResponseCache {
+
+    @Value("${nft.token.response.cache.max.bytes:67108864}")
+    private Long maxBytes;
+    @Value("${nft.token.response.cache.ttl:30}")
+    private Long ttl;
+    private Cache<ResponseKey, String> cache;
+
+    @PostConstruct
+    public void initializeCache() {
+        cache = Caffeine.newBuilder()
+                .expireAfterWrite(ttl, MINUTES)
+                .maximumWeight(maxBytes)
+                // string chars take up to 2 bytes
+                .<ResponseKey, String>weigher((key, body) -> 2 * (key.url().length() + body.length()))
+                .recordStats()
+                .build();
+    }
+
+    public String get(String collectionId, String url) {
+        return cache.getIfPresent(new ResponseKey(collectionId, url));
+    }
+
+    public void put(String collectionId, String url, String body) {
+        cache.asMap().putIfAbsent(new ResponseKey(collectionId, url), body);
+    }
+
+    public void invalidateCollection(String collectionId) {
+        cache.asMap().keySet().removeIf(key -> key.collectionId().equals(collectionId));
+    }
+
+    public CacheStats stats() {
+        return cache.stats();
+    }
+
+    private record ResponseKey(String collectionId, String url) {
+    }
+}
@@ -1,38 +1,155 @@
 package com.pancakeswap.nft.publish.util;
 
-import com.google.gson.FieldNamingPolicy;
-import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
 import com.pancakeswap.nft.publish.model.dto.AbstractTokenDto;
+import com.pancakeswap.nft.publish.model.dto.AttributeDto;
 import com.pancakeswap.nft.publish.model.dto.TokenDataFormattedDto;
 import com.pancakeswap.nft.publish.model.dto.TokenDataNoFormattedDto;
 
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
 public class GsonUtil {
 
-    public static final Gson gsonUnderscores = new GsonBuilder()
-                .setFieldNamingPolicy(FieldNamingPolicy.LOWER_CASE_WITH_UNDERSCORES)
-                .create();
+    // Reads token metadata in one pass. Attributes given as a list of {trait_type, value} produce
+    // TokenDataFormattedDto, attributes given as an object produce TokenDataNoFormattedDto.
+    public static AbstractTokenDto parseBody(String body) {
+        try (JsonReader reader = new JsonReader(new StringReader(body))) {
+            reader.setLenient(true);
+            if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+                throw new JsonSyntaxException("Expected token metadata object but was " + reader.peek());
+            }
+            return readToken(reader);
+        } catch (IOException | IllegalStateException e) {
+            throw new JsonSyntaxException(e);
+        }
+    }
 
-    public static final Gson gsonIdentity = new GsonBuilder()
-                .setFieldNamingPolicy(FieldNamingPolicy.IDENTITY)
-                .create();
+    private static AbstractTokenDto readToken(JsonReader reader) throws IOException {
+        String tokenId = null, name = null, description = null, image = null, gif = null;
+        String imagePng = null, imagePngIdentity = null;
+        Boolean isMp4 = null, isWebm = null, isGif = null;
+        List<AttributeDto> attributeList = null;
+        Map<String, String> attributeMap = null;
 
-    public static AbstractTokenDto parseBody(String body) {
-        AbstractTokenDto underscore;
-        AbstractTokenDto identity;
-
-        try {
-            underscore = gsonUnderscores.fromJson(body, TokenDataFormattedDto.class);
-            identity = gsonIdentity.fromJson(body, TokenDataFormattedDto.class);
-        } catch (Exception e) {
-            underscore = gsonUnderscores.fromJson(body, TokenDataNoFormattedDto.class);
-            identity = gsonIdentity.fromJson(body, TokenDataNoFormattedDto.class);
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "token_id" -> tokenId = nextString(reader);
+                case "name" -> name = nextString(reader);
+                case "description" -> description = nextString(reader);
+                case "image" -> image = nextString(reader);
+                case "image_png" -> imagePng = nextString(reader);
+                case "imagePng" -> imagePngIdentity = nextString(reader);
+                case "gif" -> gif = nextString(reader);
+                case "is_mp4" -> isMp4 = nextBoolean(reader);
+                case "is_webm" -> isWebm = nextBoolean(reader);
+                case "is_gif" -> isGif = nextBoolean(reader);
+                case "attributes" -> {
+                    attributeList = null;
+                    attributeMap = null;
+                    switch (reader.peek()) {
+                        case BEGIN_ARRAY -> attributeList = readAttributeList(reader);
+                        case BEGIN_OBJECT -> attributeMap = readAttributeMap(reader);
+                        case NULL -> reader.nextNull();
+                        default -> throw unexpected(reader, "attributes");
+                    }
+                }
+                default -> reader.skipValue();
+            }
         }
+        reader.endObject();
+
+        AbstractTokenDto dto;
+        if (attributeMap != null) {
+            TokenDataNoFormattedDto noFormatted = new TokenDataNoFormattedDto();
+            noFormatted.setAttributes(attributeMap);
+            dto = noFormatted;
+        } else {
+            TokenDataFormattedDto formatted = new TokenDataFormattedDto();
+            formatted.setAttributes(attributeList);
+            dto = formatted;
+        }
+        dto.setTokenId(tokenId);
+        dto.setName(name);
+        dto.setDescription(description);
+        dto.setImage(image);
+        dto.setImagePng(imagePng != null ? imagePng : imagePngIdentity);
+        dto.setGif(gif);
+        dto.setIsMp4(isMp4);
+        dto.setIsWebm(isWebm);
+        dto.setIsGif(isGif);
+
+        return dto;
+    }
 
-        if (underscore.getImagePng() == null) {
-            underscore.setImagePng(identity.getImagePng());
+    private static List<AttributeDto> readAttributeList(JsonReader reader) throws IOException {
+        List<AttributeDto> attributes = new ArrayList<>();
+        reader.beginArray();
+        while (reader.hasNext()) {
+            if (reader.peek() == JsonToken.NULL) {
+                reader.nextNull();
+                continue;
+            }
+            AttributeDto attribute = new AttributeDto();
+            reader.beginObject();
+            while (reader.hasNext()) {
+                switch (reader.nextName()) {
+                    case "trait_type" -> attribute.setTraitType(nextString(reader));
+                    case "value" -> attribute.setValue(nextString(reader));
+                    default -> reader.skipValue();
+                }
+            }
+            reader.endObject();
+            attributes.add(attribute);
         }
+        reader.endArray();
+        return attributes;
+    }
+
+    private static Map<String, String> readAttributeMap(JsonReader reader) throws IOException {
+        Map<String, String> attributes = new LinkedHashMap<>();
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String traitType = reader.nextName();
+            attributes.put(traitType, nextString(reader));
+        }
+        reader.endObject();
+        return attributes;
+    }
+
+    // same coercions as Gson's String adapter: numbers keep their literal, booleans are printed
+    private static String nextString(JsonReader reader) throws IOException {
+        return switch (reader.peek()) {
+            case STRING, NUMBER -> reader.nextString();
+            case BOOLEAN -> Boolean.toString(reader.nextBoolean());
+            case NULL -> {
+                reader.nextNull();
+                yield null;
+            }
+            default -> throw unexpected(reader, "a string");
+        };
+    }
+
+    private static Boolean nextBoolean(JsonReader reader) throws IOException {
+        return switch (reader.peek()) {
+            case BOOLEAN -> reader.nextBoolean();
+            case STRING -> Boolean.parseBoolean(reader.nextString());
+            case NULL -> {
+                reader.nextNull();
+                yield null;
+            }
+            default -> throw unexpected(reader, "a boolean");
+        };
+    }
 
-        return underscore;
+    private static JsonSyntaxException unexpected(JsonReader reader, String expected) throws IOException {
+        return new JsonSyntaxException(String.format("Expected %s but was %s at path %s", expected, reader.peek(), reader.getPath()));
     }
 }
@@ -0,0 +1,76 @@
+package com.pancakeswap.nft.publish.util;
+
+import org.web3j.utils.Numeric;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+
+// ABI codec for Multicall3 aggregate3((address target, bool allowFailure, bytes callData)[])
+public class MulticallUtil {
+
+    public static final String AGGREGATE3_SELECTOR = "0x82ad56cb";
+    private static final int WORD = 64;
+
+    public record Call(String target, boolean allowFailure, String callData) {
+    }
+
+    public record Result(boolean success, String returnData) {
+    }
+
+    public static String encodeAggregate3(List<Call> calls) {
+        List<String> tuples = new ArrayList<>(calls.size());
+        for (Call call : calls) {
+            String data = Numeric.cleanHexPrefix(call.callData());
+            tuples.add(word(Numeric.toBigInt(call.target()))
+                    + word(call.allowFailure() ? BigInteger.ONE : BigInteger.ZERO)
+                    + word(BigInteger.valueOf(3 * 32))
+                    + word(BigInteger.valueOf(data.length() / 2))
+                    + padRight(data));
+        }
+
+        StringBuilder res = new StringBuilder(AGGREGATE3_SELECTOR)
+                .append(word(BigInteger.valueOf(32)))
+                .append(word(BigInteger.valueOf(calls.size())));
+        long offset = 32L * calls.size();
+        for (String tuple : tuples) {
+            res.append(word(BigInteger.valueOf(offset)));
+            offset += tuple.length() / 2;
+        }
+        tuples.forEach(res::append);
+        return res.toString();
+    }
+
+    public static List<Result> decodeAggregate3(String response) {
+        String data = Numeric.cleanHexPrefix(response);
+        int array = readInt(data, 0) * 2;
+        int size = readInt(data, array);
+        int elements = array + WORD;
+
+        List<Result> results = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            int tuple = elements + readInt(data, elements + i * WORD) * 2;
+            boolean success = readInt(data, tuple) != 0;
+            int bytes = tuple + readInt(data, tuple + WORD) * 2;
+            int length = readInt(data, bytes) * 2;
+            results.add(new Result(success, "0x" + data.substring(bytes + WORD, bytes + WORD + length)));
+        }
+        return results;
+    }
+
+    private static int readInt(String data, int position) {
+        if (data.length() < position + WORD) {
+            throw new IllegalArgumentException("Malformed aggregate3 response");
+        }
+        return new BigInteger(data.substring(position, position + WORD), 16).intValueExact();
+    }
+
+    private static String word(BigInteger value) {
+        return Numeric.toHexStringNoPrefixZeroPadded(value, WORD);
+    }
+
+    private static String padRight(String data) {
+        int rest = data.length() % WORD;
+        return rest == 0 ? data : data + "0".repeat(WORD - rest);
+    }
+}
@@ -24,4 +24,9 @@ public class UrlUtil {
             return ipfsUrl.trim();
         }
     }
+
+    // Content path of a url formatted by getIpfsFormattedUrl, e.g. <cid>/1.json, null for other urls
+    public static String getIpfsPath(String url) {
+        return url.startsWith(pancakeIpfsNode) ? url.substring(pancakeIpfsNode.length()) : null;
+    }
 }
@@ -0,0 +1,117 @@
+package com.pancakeswap.nft.publish.config;
+
+import com.pancakeswap.nft.publish.exception.ListingException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FutureConfigTest {
+
+    private static final ListingStage STAGE = ListingStage.STORE;
+
+    private final AtomicInteger ran = new AtomicInteger();
+    private StageExecutor executor;
+    private FutureConfig config;
+
+    @BeforeEach
+    void setUp() {
+        executor = new StageExecutor(STAGE, 2, Executors.defaultThreadFactory());
+        StageExecutor.JobQueue queue = executor.newJobQueue(1);
+        config = new FutureConfig(Map.of(STAGE, task -> executor.submit(queue, task)), Map.of(STAGE, new Semaphore(100)), new StageMetrics());
+    }
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        executor.shutdown(1, TimeUnit.SECONDS);
+    }
+
+    @Test
+    void waitsForNestedSubmissions() {
+        for (int i = 0; i < 10; i++) {
+            config.addFuture(STAGE, () -> {
+                ran.incrementAndGet();
+                config.addFuture(STAGE, ran::incrementAndGet);
+            });
+        }
+
+        config.awaitCompletion();
+
+        assertEquals(20, ran.get());
+    }
+
+    @Test
+    void waitsForAsyncCallbacks() {
+        CompletableFuture<String> response = new CompletableFuture<>();
+        config.addFuture(STAGE, () -> response, (res, e) -> ran.incrementAndGet());
+
+        CompletableFuture.delayedExecutor(100, TimeUnit.MILLISECONDS).execute(() -> response.complete("done"));
+        config.awaitCompletion();
+
+        assertEquals(1, ran.get());
+    }
+
+    @Test
+    void abandonsQueuedTasksOnShutdown() throws InterruptedException {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        config.addFuture(STAGE, () -> {
+            started.countDown();
+            awaitUninterruptibly(release);
+        });
+        config.addFuture(STAGE, ran::incrementAndGet);
+        config.addFuture(STAGE, ran::incrementAndGet);
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        Thread shutdown = new Thread(() -> {
+            try {
+                executor.shutdown(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        shutdown.start();
+        while (executor.getQueued() > 0) {
+            Thread.sleep(10);
+        }
+        release.countDown();
+
+        ListingException e = assertThrows(ListingException.class, config::awaitCompletion);
+        assertTrue(e.getMessage().contains("2 tasks"), e.getMessage());
+        assertEquals(0, ran.get());
+        shutdown.join();
+    }
+
+    @Test
+    void failsTasksSubmittedAfterShutdown() throws InterruptedException {
+        CompletableFuture<String> response = new CompletableFuture<>();
+        config.addFuture(STAGE, () -> response, (res, e) -> ran.incrementAndGet());
+        executor.shutdown(1, TimeUnit.SECONDS);
+
+        assertThrows(RejectedExecutionException.class, () -> config.addFuture(STAGE, ran::incrementAndGet));
+        response.complete("done");
+
+        assertThrows(ListingException.class, config::awaitCompletion);
+        assertEquals(0, ran.get());
+    }
+
+    private static void awaitUninterruptibly(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
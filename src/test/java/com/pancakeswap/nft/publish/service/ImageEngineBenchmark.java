@@ -0,0 +1,71 @@
+package com.pancakeswap.nft.publish.service;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+// Resize presets and png compression levels on a 2000px token image, resized to the 1000px derivative.
+// mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=com.pancakeswap.nft.publish.service.ImageEngineBenchmark
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ImageEngineBenchmark {
+
+    @Param({"QUALITY", "FAST"})
+    private ImageEngine.Preset preset;
+
+    @Param({"-1", "1", "6", "9"})
+    private int pngCompressionLevel;
+
+    private ImageEngine engine;
+    private BufferedImage image;
+    private BufferedImage resized;
+
+    @Setup
+    public void setUp() {
+        engine = new ImageEngine();
+        ReflectionTestUtils.setField(engine, "preset", preset);
+        ReflectionTestUtils.setField(engine, "pngCompressionLevel", pngCompressionLevel);
+
+        // opaque gradient with noise, so neither the resize nor the deflate is trivial
+        image = new BufferedImage(2000, 2000, BufferedImage.TYPE_INT_ARGB);
+        for (int y = 0; y < image.getHeight(); y++) {
+            for (int x = 0; x < image.getWidth(); x++) {
+                image.setRGB(x, y, 0xFF000000 | (x * 255 / 2000) << 16 | (y * 255 / 2000) << 8 | (x * y) % 7);
+            }
+        }
+        resized = engine.resize(image, 1000);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        System.out.printf("%n%s, png compression level %d: %d bytes png derivative%n", preset, pngCompressionLevel, encode());
+    }
+
+    @Benchmark
+    public BufferedImage resize() {
+        return engine.resize(image, 1000);
+    }
+
+    // size of the encoded derivative, the compression level trades it for time
+    @Benchmark
+    public int encode() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        engine.encode(resized, TokenMetadata.PNG, out);
+        return out.size();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(ImageEngineBenchmark.class.getSimpleName()).build()).run();
+    }
+}
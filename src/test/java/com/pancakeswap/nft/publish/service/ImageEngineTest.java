@@ -0,0 +1,131 @@
+package com.pancakeswap.nft.publish.service;
+
+import com.pancakeswap.nft.publish.model.entity.ImageVariant;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ImageEngineTest {
+
+    @Test
+    void defaultsToSinglePngVariant() {
+        ImageEngine engine = engine(ImageEngine.Preset.QUALITY, -1);
+
+        assertEquals(List.of(new ImageVariant(1000, "png")), engine.variants(null, null));
+        assertEquals(List.of(new ImageVariant(1000, "png")), engine.variants(List.of(), "PNG"));
+    }
+
+    @Test
+    void ordersVariantsLargestFirst() {
+        ImageEngine engine = engine(ImageEngine.Preset.QUALITY, -1);
+
+        assertEquals(List.of(new ImageVariant(1000, "png"), new ImageVariant(500, "png"), new ImageVariant(250, "png")),
+                engine.variants(Arrays.asList(250, 1000, null, 250, 0, 500), "png"));
+    }
+
+    @Test
+    void fallsBackToPngForUnsupportedFormats() {
+        ImageEngine engine = engine(ImageEngine.Preset.QUALITY, -1);
+
+        assertEquals(List.of(new ImageVariant(1000, "png")), engine.variants(List.of(1000), "gif"));
+        assertEquals(List.of(new ImageVariant(1000, "png")), engine.variants(List.of(1000), "tiff"));
+        // the JDK has no webp writer
+        assertEquals(List.of(new ImageVariant(1000, "png")), engine.variants(List.of(1000), "webp"));
+    }
+
+    @Test
+    void resizesIntoBoxKeepingAspectRatio() {
+        for (ImageEngine.Preset preset : ImageEngine.Preset.values()) {
+            ImageEngine engine = engine(preset, -1);
+
+            BufferedImage landscape = engine.resize(image(3000, 2000, BufferedImage.TYPE_INT_RGB), 1000);
+            assertEquals(1000, landscape.getWidth(), preset.name());
+            assertEquals(667, landscape.getHeight(), preset.name());
+
+            BufferedImage portrait = engine.resize(image(400, 1200, BufferedImage.TYPE_INT_RGB), 1000);
+            assertEquals(333, portrait.getWidth(), preset.name());
+            assertEquals(1000, portrait.getHeight(), preset.name());
+        }
+    }
+
+    @Test
+    void fastPresetKeepsTransparency() {
+        ImageEngine engine = engine(ImageEngine.Preset.FAST, -1);
+
+        BufferedImage resized = engine.resize(image(2000, 2000, BufferedImage.TYPE_INT_ARGB), 1000);
+
+        assertTrue(resized.getColorModel().hasAlpha());
+        assertEquals(0x80, resized.getRGB(500, 500) >>> 24);
+    }
+
+    @Test
+    void fastPresetReusesScratchImages() {
+        ImageEngine engine = engine(ImageEngine.Preset.FAST, -1);
+
+        BufferedImage first = engine.resize(image(1600, 1600, BufferedImage.TYPE_INT_RGB), 1000);
+        BufferedImage second = engine.resize(image(1600, 1600, BufferedImage.TYPE_INT_RGB), 1000);
+        BufferedImage other = engine.resize(image(1600, 1600, BufferedImage.TYPE_INT_RGB), 500);
+
+        assertSame(first, second);
+        assertNotSame(first, other);
+    }
+
+    @Test
+    void keepsImagesFittingTheBox() {
+        ImageEngine engine = engine(ImageEngine.Preset.QUALITY, -1);
+        BufferedImage small = image(800, 600, BufferedImage.TYPE_INT_RGB);
+
+        assertSame(small, engine.downscale(small, 1000));
+        assertEquals(1000, engine.downscale(image(1200, 600, BufferedImage.TYPE_INT_RGB), 1000).getWidth());
+    }
+
+    @Test
+    void appliesPngCompressionLevel() throws IOException {
+        BufferedImage image = image(600, 600, BufferedImage.TYPE_INT_RGB);
+
+        byte[] stored = encode(engine(ImageEngine.Preset.QUALITY, 0), image);
+        byte[] deflated = encode(engine(ImageEngine.Preset.QUALITY, 9), image);
+
+        assertTrue(deflated.length < stored.length);
+        for (byte[] png : List.of(stored, deflated)) {
+            BufferedImage decoded = ImageIO.read(new ByteArrayInputStream(png));
+            assertEquals(image.getRGB(123, 456), decoded.getRGB(123, 456));
+        }
+    }
+
+    private static ImageEngine engine(ImageEngine.Preset preset, int pngCompressionLevel) {
+        ImageEngine engine = new ImageEngine();
+        ReflectionTestUtils.setField(engine, "preset", preset);
+        ReflectionTestUtils.setField(engine, "pngCompressionLevel", pngCompressionLevel);
+        return engine;
+    }
+
+    // gradient, half transparent when the type has alpha
+    private static BufferedImage image(int width, int height, int type) {
+        BufferedImage image = new BufferedImage(width, height, type);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                image.setRGB(x, y, 0x80 << 24 | (x * 255 / width) << 16 | (y * 255 / height) << 8);
+            }
+        }
+        return image;
+    }
+
+    private static byte[] encode(ImageEngine engine, BufferedImage image) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        engine.encode(image, TokenMetadata.PNG, out);
+        return out.toByteArray();
+    }
+}
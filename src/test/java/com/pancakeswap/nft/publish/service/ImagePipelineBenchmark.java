@@ -0,0 +1,141 @@
+package com.pancakeswap.nft.publish.service;
+
+import com.amazonaws.services.s3.AbstractAmazonS3;
+import com.amazonaws.services.s3.model.PutObjectRequest;
+import com.amazonaws.services.s3.model.PutObjectResult;
+import com.pancakeswap.nft.publish.config.DownstreamLimiter;
+import com.pancakeswap.nft.publish.config.ImageProcessingPool;
+import com.pancakeswap.nft.publish.config.StageMetrics;
+import com.sun.net.httpserver.HttpServer;
+import org.imgscalr.Scalr;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// A png token image and its 1000px derivative from a local http server into a discarding S3 stub. previous is the
+// path before images were downloaded once: two downloads, two decodes and the original encoded again. current goes
+// through the banner upload, which shares the single download path of token images without their content lookups.
+// Bytes downloaded and process cpu time per image, warmup included, are printed at the end of each trial.
+// The cpu time includes the server.
+// mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=com.pancakeswap.nft.publish.service.ImagePipelineBenchmark
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ImagePipelineBenchmark {
+
+    private static final String COLLECTION = "0xdf7952b35f24acf7fc0487d01c8d5690a60dba07";
+
+    private final AtomicLong downloadedBytes = new AtomicLong();
+    private final AtomicLong images = new AtomicLong();
+    private HttpServer server;
+    private ImageProcessingPool imageProcessingPool;
+    private ImageUploadingService service;
+    private String url;
+    private long cpuTime;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        byte[] body = png(1600, 1600);
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/token.png", exchange -> {
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+            downloadedBytes.addAndGet(body.length);
+        });
+        server.start();
+        url = "http://127.0.0.1:" + server.getAddress().getPort() + "/token.png";
+
+        DownstreamLimiter downstreamLimiter = new DownstreamLimiter();
+        ReflectionTestUtils.setField(downstreamLimiter, "ipfsMaxConcurrency", 4);
+        ReflectionTestUtils.setField(downstreamLimiter, "s3MaxConcurrency", 4);
+        ReflectionTestUtils.setField(downstreamLimiter, "mongoMaxConcurrency", 4);
+        downstreamLimiter.init();
+
+        imageProcessingPool = new ImageProcessingPool(new StageMetrics());
+        ReflectionTestUtils.setField(imageProcessingPool, "concurrency", 1);
+        ReflectionTestUtils.setField(imageProcessingPool, "queueSize", 4);
+        imageProcessingPool.init();
+
+        ImageEngine imageEngine = new ImageEngine();
+        ReflectionTestUtils.setField(imageEngine, "preset", ImageEngine.Preset.QUALITY);
+        ReflectionTestUtils.setField(imageEngine, "pngCompressionLevel", -1);
+
+        AbstractAmazonS3 s3client = new AbstractAmazonS3() {
+            @Override
+            public PutObjectResult putObject(PutObjectRequest request) {
+                return new PutObjectResult();
+            }
+        };
+        service = new ImageUploadingService(downstreamLimiter, null, imageProcessingPool, imageEngine, null, null);
+        ReflectionTestUtils.setField(service, "bucket", "nft");
+        ReflectionTestUtils.setField(service, "bannerSmallSize", 1000);
+        ReflectionTestUtils.setField(service, "s3client", s3client);
+        ReflectionTestUtils.setField(service, "objectIndex", new S3ObjectIndex(s3client, downstreamLimiter, "nft"));
+        cpuTime = processCpuTime();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        long cpu = processCpuTime() - cpuTime;
+        System.out.printf("%n%d images, %d bytes downloaded and %.1f ms cpu per image%n",
+                images.get(), downloadedBytes.get() / images.get(), cpu / 1e6 / images.get());
+        server.stop(0);
+        imageProcessingPool.shutdown();
+    }
+
+    @Benchmark
+    public int previous() throws IOException {
+        BufferedImage original = ImageIO.read(new URL(url));
+        BufferedImage resized = Scalr.resize(ImageIO.read(new URL(url)),
+                Scalr.Method.AUTOMATIC, Scalr.Mode.AUTOMATIC, 1000, 1000, Scalr.OP_ANTIALIAS);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(original, "png", out);
+        ImageIO.write(resized, "png", out);
+        images.incrementAndGet();
+        return out.size();
+    }
+
+    @Benchmark
+    public void current() {
+        service.uploadBannerImage(COLLECTION, url);
+        images.incrementAndGet();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(ImagePipelineBenchmark.class.getSimpleName()).build()).run();
+    }
+
+    private static long processCpuTime() {
+        return ((com.sun.management.OperatingSystemMXBean) ManagementFactory.getOperatingSystemMXBean()).getProcessCpuTime();
+    }
+
+    private static byte[] png(int width, int height) throws IOException {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                image.setRGB(x, y, (x * 255 / width) << 16 | (y * 255 / height) << 8 | (x + y) % 256);
+            }
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(image, "png", out);
+        return out.toByteArray();
+    }
+}
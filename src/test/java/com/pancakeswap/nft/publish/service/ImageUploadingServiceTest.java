@@ -0,0 +1,156 @@
+package com.pancakeswap.nft.publish.service;
+
+import com.amazonaws.services.s3.AbstractAmazonS3;
+import com.amazonaws.services.s3.model.PutObjectRequest;
+import com.amazonaws.services.s3.model.PutObjectResult;
+import com.pancakeswap.nft.publish.config.DownstreamLimiter;
+import com.pancakeswap.nft.publish.config.ImageProcessingPool;
+import com.pancakeswap.nft.publish.config.StageMetrics;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ImageUploadingServiceTest {
+
+    private static final String COLLECTION = "0xdf7952b35f24acf7fc0487d01c8d5690a60dba07";
+    private static final String PREFIX = "mainnet/0xDf7952B35f24aCF7fC0487D01c8d5690a60DBa07/";
+    private static final byte[] PNG_SIGNATURE = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'};
+
+    private final Map<String, AtomicInteger> downloads = new ConcurrentHashMap<>();
+    private final Map<String, byte[]> uploads = new ConcurrentHashMap<>();
+    private HttpServer server;
+    private ImageProcessingPool imageProcessingPool;
+    private ImageUploadingService service;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        serve("/square.png", image(1200, 1200), "png");
+        serve("/square.jpg", image(1200, 1200), "jpg");
+        serve("/banner.png", image(1600, 400), "png");
+        server.start();
+
+        DownstreamLimiter downstreamLimiter = new DownstreamLimiter();
+        ReflectionTestUtils.setField(downstreamLimiter, "ipfsMaxConcurrency", 4);
+        ReflectionTestUtils.setField(downstreamLimiter, "s3MaxConcurrency", 4);
+        ReflectionTestUtils.setField(downstreamLimiter, "mongoMaxConcurrency", 4);
+        downstreamLimiter.init();
+
+        imageProcessingPool = new ImageProcessingPool(new StageMetrics());
+        ReflectionTestUtils.setField(imageProcessingPool, "concurrency", 1);
+        ReflectionTestUtils.setField(imageProcessingPool, "queueSize", 4);
+        imageProcessingPool.init();
+
+        ImageEngine imageEngine = new ImageEngine();
+        ReflectionTestUtils.setField(imageEngine, "preset", ImageEngine.Preset.QUALITY);
+        ReflectionTestUtils.setField(imageEngine, "pngCompressionLevel", -1);
+
+        AbstractAmazonS3 s3client = new AbstractAmazonS3() {
+            @Override
+            public PutObjectResult putObject(PutObjectRequest request) {
+                try {
+                    uploads.put(request.getKey(), request.getInputStream().readAllBytes());
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                return new PutObjectResult();
+            }
+        };
+        service = new ImageUploadingService(downstreamLimiter, null, imageProcessingPool, imageEngine, null, null);
+        ReflectionTestUtils.setField(service, "bucket", "nft");
+        ReflectionTestUtils.setField(service, "bannerSmallSize", 800);
+        ReflectionTestUtils.setField(service, "s3client", s3client);
+        ReflectionTestUtils.setField(service, "objectIndex", new S3ObjectIndex(s3client, downstreamLimiter, "nft"));
+    }
+
+    @AfterEach
+    void tearDown() {
+        server.stop(0);
+        imageProcessingPool.shutdown();
+    }
+
+    @Test
+    void uploadsPngWithOriginalBytes() throws IOException {
+        byte[] original = encode(image(1200, 1200), "png");
+
+        service.uploadAvatarImage(COLLECTION, url("/square.png"));
+
+        assertEquals(1, downloads.get("/square.png").get());
+        assertArrayEquals(original, uploads.get(PREFIX + "avatar.png"));
+    }
+
+    @Test
+    void encodesOtherFormatsToPngOnce() throws IOException {
+        service.uploadAvatarImage(COLLECTION, url("/square.jpg"));
+
+        assertEquals(1, downloads.get("/square.jpg").get());
+        byte[] uploaded = uploads.get(PREFIX + "avatar.png");
+        assertTrue(Arrays.equals(uploaded, 0, PNG_SIGNATURE.length, PNG_SIGNATURE, 0, PNG_SIGNATURE.length));
+        assertEquals(1200, ImageIO.read(new ByteArrayInputStream(uploaded)).getWidth());
+    }
+
+    @Test
+    void resizesBannerFromSingleDownload() throws IOException {
+        byte[] original = encode(image(1600, 400), "png");
+
+        service.uploadBannerImage(COLLECTION, url("/banner.png"));
+
+        assertEquals(1, downloads.get("/banner.png").get());
+        assertArrayEquals(original, uploads.get(PREFIX + "banner-lg.png"));
+        BufferedImage small = ImageIO.read(new ByteArrayInputStream(uploads.get(PREFIX + "banner-sm.png")));
+        assertEquals(800, small.getWidth());
+        assertEquals(200, small.getHeight());
+    }
+
+    private void serve(String path, BufferedImage image, String format) throws IOException {
+        byte[] body = encode(image, format);
+        downloads.put(path, new AtomicInteger());
+        server.createContext(path, exchange -> {
+            downloads.get(path).incrementAndGet();
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+    }
+
+    private String url(String path) {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + path;
+    }
+
+    // opaque gradient, so the encoded size is not trivial
+    private static BufferedImage image(int width, int height) {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                image.setRGB(x, y, (x * 255 / width) << 16 | (y * 255 / height) << 8 | (x + y) % 256);
+            }
+        }
+        return image;
+    }
+
+    private static byte[] encode(BufferedImage image, String format) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(image, format, out);
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,259 @@
+package com.pancakeswap.nft.publish.service;
+
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URL;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.pancakeswap.nft.publish.util.UrlUtil.pancakeIpfsNode;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class IpfsGatewayPoolTest {
+
+    private static final String CONTENT = pancakeIpfsNode + "QmYD9AtzyQPjSa9jfZcZq88gSaRssdhGmKqQifUDjGFfXm/1.json";
+
+    private final List<StubGateway> stubs = new ArrayList<>();
+    private final HttpClient client = HttpClient.newHttpClient();
+    private ExecutorService handlers;
+    private ScheduledExecutorService timer;
+
+    @BeforeEach
+    void setUp() {
+        handlers = Executors.newCachedThreadPool();
+        timer = Executors.newSingleThreadScheduledExecutor();
+    }
+
+    @AfterEach
+    void tearDown() {
+        stubs.forEach(stub -> stub.server.stop(0));
+        handlers.shutdownNow();
+        timer.shutdownNow();
+    }
+
+    @Test
+    void rewritesIpfsUrlsOnly() throws IOException {
+        StubGateway gateway = gateway("a", 200, 0);
+        IpfsGatewayPool pool = pool(false, 200, gateway);
+
+        assertEquals(gateway.baseUrl + "/ipfs/QmYD9AtzyQPjSa9jfZcZq88gSaRssdhGmKqQifUDjGFfXm/1.json", pool.resolve(CONTENT));
+        assertEquals("https://example.com/1.json", pool.resolve("https://example.com/1.json"));
+        assertEquals("https://example.com/1.json", pool.execute("https://example.com/1.json", (url, responded) -> url));
+    }
+
+    @Test
+    void prefersFasterGateway() {
+        StubGateway slow = gateway("slow", 200, 150);
+        StubGateway fast = gateway("fast", 200, 0);
+        IpfsGatewayPool pool = pool(false, 200, slow, fast);
+
+        for (int i = 0; i < 10; i++) {
+            assertEquals(200, execute(pool));
+        }
+
+        assertEquals(1, slow.hits.get());
+        assertEquals(9, fast.hits.get());
+    }
+
+    @Test
+    void movesAwayFromGatewayFailingRightAway() {
+        StubGateway failing = gateway("failing", 429, 0);
+        StubGateway healthy = gateway("healthy", 200, 20);
+        IpfsGatewayPool pool = pool(false, 200, failing, healthy);
+
+        for (int i = 0; i < 10; i++) {
+            execute(pool);
+        }
+
+        assertEquals(1, failing.hits.get());
+        assertEquals(9, healthy.hits.get());
+        assertTrue(pool.snapshot().get(0).errorRate() > 0);
+    }
+
+    @Test
+    void recordsTimeToFirstByte() {
+        StubGateway gateway = gateway("a", 200, 0);
+        IpfsGatewayPool pool = pool(false, 200, gateway);
+
+        // a slow body read after the response headers is not the gateway's latency
+        execute(pool, () -> sleep(300));
+
+        IpfsGatewayPool.GatewaySnapshot snapshot = pool.snapshot().get(0);
+        assertEquals(1, snapshot.requests());
+        assertTrue(snapshot.latencyMs() < 300, "latency " + snapshot.latencyMs());
+    }
+
+    @Test
+    void hedgesSlowRequestOnNextGateway() throws Exception {
+        StubGateway slow = gateway("slow", 200, 2000);
+        StubGateway fast = gateway("fast", 200, 0);
+        IpfsGatewayPool pool = pool(true, 100, slow, fast);
+
+        long started = System.nanoTime();
+        CompletableFuture<HttpResponse<String>> request = request(pool);
+        HttpResponse<String> response = request.get(5, TimeUnit.SECONDS);
+
+        assertEquals("fast", response.body());
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started) < 1500);
+        assertEquals(1, slow.hits.get());
+        assertEquals(1, fast.hits.get());
+        // the abandoned request on the slow gateway is not recorded against it
+        assertEquals(0, pool.snapshot().get(0).requests());
+    }
+
+    @Test
+    void doesNotHedgeFastRequest() throws Exception {
+        StubGateway primary = gateway("primary", 200, 0);
+        StubGateway secondary = gateway("secondary", 200, 0);
+        IpfsGatewayPool pool = pool(true, 200, primary, secondary);
+
+        assertEquals("primary", request(pool).get(5, TimeUnit.SECONDS).body());
+        sleep(400);
+
+        assertEquals(0, secondary.hits.get());
+    }
+
+    @Test
+    void failsOverWithoutWaitingForHedgeDelay() throws Exception {
+        StubGateway failing = gateway("failing", 502, 0);
+        StubGateway healthy = gateway("healthy", 200, 0);
+        IpfsGatewayPool pool = pool(true, 10_000, failing, healthy);
+
+        HttpResponse<String> response = request(pool).get(5, TimeUnit.SECONDS);
+
+        assertEquals(200, response.statusCode());
+        assertEquals("healthy", response.body());
+    }
+
+    @Test
+    void completesWithLastResponseWhenEveryGatewayFails() throws Exception {
+        StubGateway first = gateway("first", 502, 0);
+        StubGateway second = gateway("second", 504, 0);
+        IpfsGatewayPool pool = pool(true, 10_000, first, second);
+
+        HttpResponse<String> response = request(pool).get(5, TimeUnit.SECONDS);
+
+        assertEquals(504, response.statusCode());
+        assertEquals(1, first.hits.get());
+        assertEquals(1, second.hits.get());
+    }
+
+    @Test
+    void rejectsEmptyGatewayList() {
+        IpfsGatewayPool pool = new IpfsGatewayPool();
+        ReflectionTestUtils.setField(pool, "gatewayUrls", new String[]{" "});
+        ReflectionTestUtils.setField(pool, "hedgeEnabled", false);
+
+        assertThrows(IllegalStateException.class, pool::init);
+    }
+
+    private IpfsGatewayPool pool(boolean hedgeEnabled, long hedgeMinDelay, StubGateway... gateways) {
+        IpfsGatewayPool pool = new IpfsGatewayPool();
+        ReflectionTestUtils.setField(pool, "gatewayUrls", Arrays.stream(gateways).map(g -> g.baseUrl).toArray(String[]::new));
+        ReflectionTestUtils.setField(pool, "hedgeEnabled", hedgeEnabled);
+        ReflectionTestUtils.setField(pool, "hedgeMinDelay", hedgeMinDelay);
+        // no random picks, every request goes to the best scored gateway
+        ReflectionTestUtils.setField(pool, "exploreRatio", 0d);
+        pool.init();
+        return pool;
+    }
+
+    private CompletableFuture<HttpResponse<String>> request(IpfsGatewayPool pool) {
+        return pool.request(CONTENT, url -> client.sendAsync(HttpRequest.newBuilder(URI.create(url)).build(),
+                HttpResponse.BodyHandlers.ofString()), res -> res.statusCode() == 200, timer);
+    }
+
+    private int execute(IpfsGatewayPool pool) {
+        return execute(pool, () -> {
+        });
+    }
+
+    // status of a blocking request, bodyRead runs between the response headers and the body
+    private int execute(IpfsGatewayPool pool, Runnable bodyRead) {
+        try {
+            return pool.execute(CONTENT, (url, responded) -> {
+                HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+                try {
+                    int status = connection.getResponseCode();
+                    responded.run();
+                    if (status != 200) {
+                        throw new IOException("Status " + status);
+                    }
+                    bodyRead.run();
+                    try (InputStream in = connection.getInputStream()) {
+                        in.readAllBytes();
+                    }
+                    return status;
+                } finally {
+                    connection.disconnect();
+                }
+            });
+        } catch (IOException e) {
+            return -1;
+        }
+    }
+
+    private StubGateway gateway(String name, int status, long delayMs) {
+        try {
+            StubGateway gateway = new StubGateway(name, status, delayMs);
+            gateway.server.setExecutor(handlers);
+            gateway.server.start();
+            stubs.add(gateway);
+            return gateway;
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Local gateway answering every /ipfs/ path with its name after a delay
+    private static class StubGateway {
+        private final HttpServer server;
+        private final String baseUrl;
+        private final AtomicInteger hits = new AtomicInteger();
+
+        StubGateway(String name, int status, long delayMs) throws IOException {
+            server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+            baseUrl = "http://127.0.0.1:" + server.getAddress().getPort();
+            byte[] body = name.getBytes(StandardCharsets.UTF_8);
+            server.createContext("/ipfs/", exchange -> {
+                hits.incrementAndGet();
+                sleep(delayMs);
+                exchange.sendResponseHeaders(status, body.length);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(body);
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,166 @@
+package com.pancakeswap.nft.publish.service;
+
+import com.amazonaws.services.s3.AbstractAmazonS3;
+import com.amazonaws.services.s3.model.*;
+import com.pancakeswap.nft.publish.config.DownstreamLimiter;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class S3MultipartUploaderTest {
+
+    private static final int PART_SIZE = 5 * 1024 * 1024;
+    private static final String UPLOAD_ID = "upload";
+
+    private final Map<String, byte[]> objects = new TreeMap<>();
+    private final Map<Integer, byte[]> parts = new TreeMap<>();
+    private final List<String> calls = new CopyOnWriteArrayList<>();
+    private volatile int failingPart;
+    private S3MultipartUploader uploader;
+
+    @BeforeEach
+    void setUp() {
+        DownstreamLimiter downstreamLimiter = new DownstreamLimiter();
+        ReflectionTestUtils.setField(downstreamLimiter, "ipfsMaxConcurrency", 4);
+        ReflectionTestUtils.setField(downstreamLimiter, "s3MaxConcurrency", 4);
+        ReflectionTestUtils.setField(downstreamLimiter, "mongoMaxConcurrency", 4);
+        downstreamLimiter.init();
+
+        uploader = new S3MultipartUploader(new AbstractAmazonS3() {
+            @Override
+            public PutObjectResult putObject(PutObjectRequest request) {
+                calls.add("put");
+                byte[] bytes = read(request.getInputStream());
+                assertEquals(bytes.length, request.getMetadata().getContentLength());
+                objects.put(request.getKey(), bytes);
+                return new PutObjectResult();
+            }
+
+            @Override
+            public InitiateMultipartUploadResult initiateMultipartUpload(InitiateMultipartUploadRequest request) {
+                calls.add("initiate");
+                InitiateMultipartUploadResult result = new InitiateMultipartUploadResult();
+                result.setUploadId(UPLOAD_ID);
+                return result;
+            }
+
+            @Override
+            public UploadPartResult uploadPart(UploadPartRequest request) {
+                assertEquals(UPLOAD_ID, request.getUploadId());
+                if (request.getPartNumber() == failingPart) {
+                    throw new IllegalStateException("part rejected");
+                }
+                byte[] bytes = read(request.getInputStream());
+                assertEquals(bytes.length, request.getPartSize());
+                synchronized (parts) {
+                    parts.put(request.getPartNumber(), bytes);
+                }
+                UploadPartResult result = new UploadPartResult();
+                result.setPartNumber(request.getPartNumber());
+                result.setETag("etag-" + request.getPartNumber());
+                return result;
+            }
+
+            @Override
+            public CompleteMultipartUploadResult completeMultipartUpload(CompleteMultipartUploadRequest request) {
+                calls.add("complete");
+                List<PartETag> etags = request.getPartETags();
+                for (int i = 0; i < etags.size(); i++) {
+                    assertEquals(i + 1, etags.get(i).getPartNumber());
+                    assertEquals("etag-" + (i + 1), etags.get(i).getETag());
+                }
+                ByteArrayOutputStream object = new ByteArrayOutputStream();
+                synchronized (parts) {
+                    parts.values().forEach(object::writeBytes);
+                }
+                objects.put("multipart", object.toByteArray());
+                return new CompleteMultipartUploadResult();
+            }
+
+            @Override
+            public void abortMultipartUpload(AbortMultipartUploadRequest request) {
+                assertEquals(UPLOAD_ID, request.getUploadId());
+                calls.add("abort");
+            }
+        }, downstreamLimiter, PART_SIZE, 1);
+    }
+
+    @AfterEach
+    void tearDown() {
+        uploader.shutdown();
+    }
+
+    @Test
+    void putsObjectSmallerThanPart() throws IOException {
+        byte[] content = content(PART_SIZE - 1);
+
+        uploader.upload("nft", "small.png", new ObjectMetadata(), CannedAccessControlList.PublicRead, new ByteArrayInputStream(content));
+
+        assertEquals(List.of("put"), calls);
+        assertArrayEquals(content, objects.get("small.png"));
+    }
+
+    @Test
+    void uploadsBiggerObjectPartByPart() throws IOException {
+        byte[] content = content(2 * PART_SIZE + 1024);
+
+        uploader.upload("nft", "big.png", new ObjectMetadata(), CannedAccessControlList.PublicRead, new ByteArrayInputStream(content));
+
+        assertEquals(List.of("initiate", "complete"), calls);
+        assertEquals(List.of(1, 2, 3), List.copyOf(parts.keySet()));
+        assertEquals(1024, parts.get(3).length);
+        assertArrayEquals(content, objects.get("multipart"));
+    }
+
+    @Test
+    void abortsUploadWhenPartFails() throws IOException {
+        failingPart = 2;
+
+        assertThrows(IOException.class, () -> uploader.upload("nft", "big.png", new ObjectMetadata(),
+                CannedAccessControlList.PublicRead, new ByteArrayInputStream(content(3 * PART_SIZE))));
+
+        assertEquals(List.of("initiate", "abort"), calls);
+        assertNull(objects.get("multipart"));
+
+        // the failed upload gave its pooled buffers back
+        failingPart = 0;
+        calls.clear();
+        parts.clear();
+        byte[] content = content(3 * PART_SIZE);
+        uploader.upload("nft", "big.png", new ObjectMetadata(), CannedAccessControlList.PublicRead, new ByteArrayInputStream(content));
+        assertTrue(calls.contains("complete"));
+        assertArrayEquals(content, objects.get("multipart"));
+    }
+
+    private static byte[] content(int length) {
+        byte[] content = new byte[length];
+        new Random(length).nextBytes(content);
+        return content;
+    }
+
+    private static byte[] read(InputStream in) {
+        try {
+            return in.readAllBytes();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package com.pancakeswap.nft.publish.service;
+
+import com.amazonaws.services.s3.AbstractAmazonS3;
+import com.amazonaws.services.s3.model.ListObjectsV2Request;
+import com.amazonaws.services.s3.model.ListObjectsV2Result;
+import com.amazonaws.services.s3.model.S3ObjectSummary;
+import com.pancakeswap.nft.publish.config.DownstreamLimiter;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class S3ObjectIndexTest {
+
+    private static final String PREFIX = "mainnet/0xDf7952B35f24aCF7fC0487D01c8d5690a60DBa07/";
+
+    private final AtomicInteger listings = new AtomicInteger();
+    private final AtomicInteger existChecks = new AtomicInteger();
+    private final Set<String> stored = Set.of(PREFIX + "1.png", PREFIX + "1-1000.png", PREFIX + "2.png");
+    private volatile boolean listingFails;
+    private S3ObjectIndex index;
+
+    @BeforeEach
+    void setUp() {
+        DownstreamLimiter downstreamLimiter = new DownstreamLimiter();
+        ReflectionTestUtils.setField(downstreamLimiter, "ipfsMaxConcurrency", 4);
+        ReflectionTestUtils.setField(downstreamLimiter, "s3MaxConcurrency", 4);
+        ReflectionTestUtils.setField(downstreamLimiter, "mongoMaxConcurrency", 4);
+        downstreamLimiter.init();
+
+        index = new S3ObjectIndex(new AbstractAmazonS3() {
+            // one key per page
+            @Override
+            public ListObjectsV2Result listObjectsV2(ListObjectsV2Request request) {
+                listings.incrementAndGet();
+                if (listingFails) {
+                    throw new IllegalStateException("access denied");
+                }
+                List<String> keys = stored.stream().sorted().toList();
+                int page = request.getContinuationToken() == null ? 0 : Integer.parseInt(request.getContinuationToken());
+                ListObjectsV2Result result = new ListObjectsV2Result();
+                S3ObjectSummary summary = new S3ObjectSummary();
+                summary.setKey(keys.get(page));
+                result.getObjectSummaries().add(summary);
+                result.setTruncated(page + 1 < keys.size());
+                result.setNextContinuationToken(result.isTruncated() ? String.valueOf(page + 1) : null);
+                return result;
+            }
+
+            @Override
+            public boolean doesObjectExist(String bucket, String key) {
+                existChecks.incrementAndGet();
+                return stored.contains(key);
+            }
+        }, downstreamLimiter, "nft");
+    }
+
+    @Test
+    void listsPrefixOnceAcrossPages() {
+        assertTrue(index.exist(PREFIX, List.of("1.png", "1-1000.png")));
+        assertFalse(index.exist(PREFIX, List.of("3.png")));
+
+        assertEquals(3, listings.get());
+        assertEquals(0, existChecks.get());
+    }
+
+    @Test
+    void addsUploadsAndListsAgainAfterRelease() {
+        index.exist(PREFIX, List.of("1.png"));
+        index.uploaded(PREFIX, "3.png");
+        assertTrue(index.exist(PREFIX, List.of("3.png")));
+
+        index.release(PREFIX);
+        assertFalse(index.exist(PREFIX, List.of("3.png")));
+        assertEquals(6, listings.get());
+    }
+
+    @Test
+    void checksObjectsOneByOneWhenListingFails() {
+        listingFails = true;
+
+        assertTrue(index.exist(PREFIX, List.of("1.png", "2.png")));
+        assertFalse(index.exist(PREFIX, List.of("3.png")));
+
+        assertEquals(1, listings.get());
+        assertEquals(3, existChecks.get());
+    }
+}
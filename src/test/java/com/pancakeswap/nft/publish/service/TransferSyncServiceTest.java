@@ -0,0 +1,266 @@
+package com.pancakeswap.nft.publish.service;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.pancakeswap.nft.publish.model.sc.LogField;
+import com.pancakeswap.nft.publish.model.sc.TransferEvent;
+import com.pancakeswap.nft.publish.model.sc.TransferFilter;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.web3j.abi.EventEncoder;
+import org.web3j.utils.Numeric;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static com.pancakeswap.nft.publish.model.sc.TransferEvent.ZERO_ADDRESS;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TransferSyncServiceTest {
+
+    private static final String COLLECTION = "0xdf7952b35f24acf7fc0487d01c8d5690a60dba07";
+    private static final String TRANSFER_TOPIC = "0xddf252ad1be2c89b69c2b068fc378daa952ba7f163c4a11628f55a4df523b3ef";
+    private static final String ALICE = "0x00000000000000000000000000000000000a11ce";
+    private static final String BOB = "0x0000000000000000000000000000000000000b0b";
+
+    private StubNode node;
+    private BlockChainService blockChainService;
+    private TransferSyncService transferSyncService;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        node = new StubNode();
+        node.server.start();
+
+        blockChainService = new BlockChainService();
+        ReflectionTestUtils.setField(blockChainService, "walletAddress", ALICE);
+        ReflectionTestUtils.setField(blockChainService, "nodeUrl", "http://127.0.0.1:" + node.server.getAddress().getPort());
+        ReflectionTestUtils.setField(blockChainService, "batchSize", 100);
+        ReflectionTestUtils.setField(blockChainService, "batchFlushInterval", 20L);
+        ReflectionTestUtils.setField(blockChainService, "maxBatchesInFlight", 4);
+        ReflectionTestUtils.setField(blockChainService, "multicallEnabled", false);
+        blockChainService.afterInit();
+
+        transferSyncService = new TransferSyncService(blockChainService, null, null);
+        ReflectionTestUtils.setField(transferSyncService, "blockRange", 5000);
+        ReflectionTestUtils.setField(transferSyncService, "confirmations", 15);
+        ReflectionTestUtils.setField(transferSyncService, "ownerTracking", false);
+    }
+
+    @AfterEach
+    void tearDown() {
+        blockChainService.beforeDestroy();
+        node.server.stop(0);
+    }
+
+    @Test
+    void halvesRangeUntilNodeAcceptsIt() throws IOException {
+        node.maxRange = 1000;
+        for (long block : new long[]{10, 624, 625, 5000, 9999}) {
+            node.logs.add(transfer(ZERO_ADDRESS, ALICE, block, block, 0));
+        }
+
+        List<TransferEvent> events = transferSyncService.scan(COLLECTION, BigInteger.ZERO, BigInteger.valueOf(9999), TransferFilter.MINTS);
+
+        assertEquals(List.of(10L, 624L, 625L, 5000L, 9999L), events.stream().map(e -> e.getTokenId().longValue()).toList());
+        assertEquals(List.of(0L, 4999L), node.rejected.get(0));
+        long next = 0;
+        for (List<Long> range : node.accepted) {
+            assertEquals(next, range.get(0).longValue());
+            assertTrue(range.get(1) - range.get(0) < node.maxRange);
+            next = range.get(1) + 1;
+        }
+        assertEquals(10000, next);
+    }
+
+    @Test
+    void failsWhenSingleBlockIsRejected() {
+        node.maxRange = 0;
+
+        assertThrows(IOException.class, () -> transferSyncService.scan(COLLECTION, BigInteger.ONE, BigInteger.TEN, TransferFilter.MINTS));
+        assertEquals(List.of(List.of(1L, 10L), List.of(1L, 5L), List.of(1L, 2L), List.of(1L, 1L)), node.rejected);
+    }
+
+    @Test
+    void readsMintsAndBurnsInLogOrder() throws IOException {
+        node.logs.add(transfer(ALICE, ZERO_ADDRESS, 1, 7, 0));
+        node.logs.add(transfer(ALICE, BOB, 1, 6, 0));
+        node.logs.add(transfer(ZERO_ADDRESS, ALICE, 2, 5, 3));
+        node.logs.add(transfer(ZERO_ADDRESS, ALICE, 1, 5, 0));
+        // ERC-20 mint of the same signature, the amount is not indexed
+        node.logs.add(log(5, 1, false, TRANSFER_TOPIC, topic(ZERO_ADDRESS), topic(ALICE)));
+        // dropped by a reorg
+        node.logs.add(log(5, 2, true, TRANSFER_TOPIC, topic(ZERO_ADDRESS), topic(ALICE), topic(BigInteger.valueOf(3))));
+
+        List<TransferEvent> events = transferSyncService.scanTransfers(COLLECTION, BigInteger.ZERO, BigInteger.valueOf(100));
+
+        assertEquals(List.of(
+                new TransferEvent(ZERO_ADDRESS, ALICE, BigInteger.ONE, BigInteger.valueOf(5), BigInteger.ZERO),
+                new TransferEvent(ZERO_ADDRESS, ALICE, BigInteger.TWO, BigInteger.valueOf(5), BigInteger.valueOf(3)),
+                new TransferEvent(ALICE, ZERO_ADDRESS, BigInteger.ONE, BigInteger.valueOf(7), BigInteger.ZERO)), events);
+    }
+
+    @Test
+    void readsEveryTransferWithOwnerTracking() throws IOException {
+        ReflectionTestUtils.setField(transferSyncService, "ownerTracking", true);
+        node.logs.add(transfer(ALICE, BOB, 1, 6, 0));
+        node.logs.add(transfer(ZERO_ADDRESS, ALICE, 1, 5, 0));
+
+        List<TransferEvent> events = transferSyncService.scanTransfers(COLLECTION, BigInteger.ZERO, BigInteger.valueOf(100));
+
+        assertEquals(List.of(BigInteger.valueOf(5), BigInteger.valueOf(6)), events.stream().map(TransferEvent::getBlockNumber).toList());
+        assertEquals(BOB, events.get(1).getTo());
+        assertEquals(1, node.accepted.size());
+    }
+
+    @Test
+    void readsTokenIdsOfLevelEvents() throws IOException {
+        String levelUp = EventEncoder.buildEventSignature("LevelUp(uint256,uint256)");
+        String upgrade = EventEncoder.buildEventSignature("Upgrade(address,uint256,uint256)");
+        node.logs.add(log(5, 0, false, levelUp, topic(BigInteger.valueOf(7))));
+        node.logs.add(log(6, 0, false, TRANSFER_TOPIC, topic(ALICE), topic(BOB), topic(BigInteger.valueOf(8))));
+        node.logs.add(log(7, 0, true, levelUp, topic(BigInteger.valueOf(9))));
+        JsonObject upgraded = log(8, 0, false, upgrade, topic(ALICE));
+        upgraded.addProperty("data", "0x" + topic(BigInteger.valueOf(11)).substring(2) + topic(BigInteger.valueOf(12)).substring(2));
+        node.logs.add(upgraded);
+
+        assertEquals(List.of(BigInteger.valueOf(7)), transferSyncService.scanEventValues(COLLECTION, "LevelUp(uint256,uint256)",
+                LogField.parse("topic1"), BigInteger.ZERO, BigInteger.valueOf(100)));
+        assertEquals(List.of(BigInteger.valueOf(12)), transferSyncService.scanEventValues(COLLECTION, "Upgrade(address,uint256,uint256)",
+                LogField.parse("data1"), BigInteger.ZERO, BigInteger.valueOf(100)));
+        // a field the logs don't have
+        assertEquals(List.of(), transferSyncService.scanEventValues(COLLECTION, "LevelUp(uint256,uint256)",
+                LogField.parse("topic2"), BigInteger.ZERO, BigInteger.valueOf(100)));
+        assertThrows(IllegalArgumentException.class, () -> LogField.parse("topic4"));
+    }
+
+    @Test
+    void leavesUnconfirmedBlocksOut() throws IOException {
+        node.head = 100;
+        assertEquals(BigInteger.valueOf(85), transferSyncService.confirmedHead());
+
+        node.head = 10;
+        assertEquals(BigInteger.ZERO, transferSyncService.confirmedHead());
+    }
+
+    private static JsonObject transfer(String from, String to, long tokenId, long block, long logIndex) {
+        return log(block, logIndex, false, TRANSFER_TOPIC, topic(from), topic(to), topic(BigInteger.valueOf(tokenId)));
+    }
+
+    private static JsonObject log(long block, long logIndex, boolean removed, String... topics) {
+        JsonObject log = new JsonObject();
+        log.addProperty("removed", removed);
+        log.addProperty("logIndex", Numeric.encodeQuantity(BigInteger.valueOf(logIndex)));
+        log.addProperty("transactionIndex", "0x0");
+        log.addProperty("transactionHash", topic(BigInteger.valueOf(block * 1000 + logIndex)));
+        log.addProperty("blockHash", topic(BigInteger.valueOf(block)));
+        log.addProperty("blockNumber", Numeric.encodeQuantity(BigInteger.valueOf(block)));
+        log.addProperty("address", COLLECTION);
+        log.addProperty("data", "0x");
+        JsonArray topicArray = new JsonArray();
+        for (String topic : topics) {
+            topicArray.add(topic);
+        }
+        log.add("topics", topicArray);
+        return log;
+    }
+
+    private static String topic(String address) {
+        return topic(Numeric.toBigInt(address));
+    }
+
+    private static String topic(BigInteger value) {
+        return Numeric.toHexStringWithPrefixZeroPadded(value, 64);
+    }
+
+    // JSON-RPC node answering eth_blockNumber and eth_getLogs from canned logs. Ranges wider than maxRange
+    // blocks are rejected the way providers reject queries with too many results
+    private static class StubNode {
+        private final HttpServer server;
+        private final List<JsonObject> logs = Collections.synchronizedList(new ArrayList<>());
+        private final List<List<Long>> accepted = Collections.synchronizedList(new ArrayList<>());
+        private final List<List<Long>> rejected = Collections.synchronizedList(new ArrayList<>());
+        private volatile long maxRange = Long.MAX_VALUE;
+        private volatile long head;
+
+        StubNode() throws IOException {
+            server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+            server.createContext("/", exchange -> {
+                JsonObject request;
+                try (InputStream in = exchange.getRequestBody()) {
+                    request = JsonParser.parseString(new String(in.readAllBytes(), StandardCharsets.UTF_8)).getAsJsonObject();
+                }
+                JsonObject response = new JsonObject();
+                response.addProperty("jsonrpc", "2.0");
+                response.add("id", request.get("id"));
+                switch (request.get("method").getAsString()) {
+                    case "eth_blockNumber" -> response.addProperty("result", Numeric.encodeQuantity(BigInteger.valueOf(head)));
+                    case "eth_getLogs" -> getLogs(request.getAsJsonArray("params").get(0).getAsJsonObject(), response);
+                    default -> response.add("error", error(-32601, "the method does not exist"));
+                }
+
+                byte[] body = response.toString().getBytes(StandardCharsets.UTF_8);
+                exchange.getResponseHeaders().add("Content-Type", "application/json");
+                exchange.sendResponseHeaders(200, body.length);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(body);
+                }
+            });
+        }
+
+        private void getLogs(JsonObject filter, JsonObject response) {
+            long from = Numeric.toBigInt(filter.get("fromBlock").getAsString()).longValueExact();
+            long to = Numeric.toBigInt(filter.get("toBlock").getAsString()).longValueExact();
+            if (to - from + 1 > maxRange) {
+                rejected.add(List.of(from, to));
+                response.add("error", error(-32005, "query returned more than 10000 results"));
+                return;
+            }
+            accepted.add(List.of(from, to));
+
+            JsonArray topics = filter.getAsJsonArray("topics");
+            JsonArray result = new JsonArray();
+            synchronized (logs) {
+                for (JsonObject log : logs) {
+                    long block = Numeric.toBigInt(log.get("blockNumber").getAsString()).longValueExact();
+                    if (block >= from && block <= to && log.get("address").getAsString().equalsIgnoreCase(filter.get("address").getAsString())
+                            && matches(topics, log.getAsJsonArray("topics"))) {
+                        result.add(log);
+                    }
+                }
+            }
+            response.add("result", result);
+        }
+
+        private static boolean matches(JsonArray filter, JsonArray topics) {
+            for (int i = 0; filter != null && i < filter.size(); i++) {
+                JsonElement expected = filter.get(i);
+                if (!expected.isJsonNull() && (i >= topics.size() || !expected.getAsString().equalsIgnoreCase(topics.get(i).getAsString()))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private static JsonObject error(int code, String message) {
+            JsonObject error = new JsonObject();
+            error.addProperty("code", code);
+            error.addProperty("message", message);
+            return error;
+        }
+    }
+}
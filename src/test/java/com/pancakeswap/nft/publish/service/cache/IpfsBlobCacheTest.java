@@ -0,0 +1,106 @@
+package com.pancakeswap.nft.publish.service.cache;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+import static com.pancakeswap.nft.publish.util.UrlUtil.pancakeIpfsNode;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class IpfsBlobCacheTest {
+
+    private static final String CID = "QmYwAPJzv5CZsnA625s3Xf2nemtYgPpHdWEz79ojWnPbdG";
+
+    private Path dir;
+    private IpfsBlobCache cache;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        dir = Files.createTempDirectory("ipfs-cache");
+        cache = cache(30);
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        try (Stream<Path> paths = Files.walk(dir)) {
+            for (Path path : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator) {
+                Files.delete(path);
+            }
+        }
+    }
+
+    @Test
+    void readsBackStoredContent() throws IOException {
+        byte[] image = {1, 2, 3, 4};
+        cache.putString(url("1.json"), "{\"name\":\"Token 1\"}");
+        cache.put(url("1.png"), out -> out.write(image));
+
+        assertEquals("{\"name\":\"Token 1\"}", cache.getString(url("1.json")));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertTrue(cache.copyTo(url("1.png"), out));
+        assertArrayEquals(image, out.toByteArray());
+        assertFalse(cache.copyTo(url("2.png"), new ByteArrayOutputStream()));
+    }
+
+    @Test
+    void skipsNonIpfsUrls() throws IOException {
+        cache.putString("https://api.example.com/1.json", "{}");
+
+        assertNull(cache.getString("https://api.example.com/1.json"));
+        try (Stream<Path> paths = Files.walk(dir)) {
+            assertEquals(0, paths.filter(Files::isRegularFile).count());
+        }
+    }
+
+    @Test
+    void evictsLeastRecentlyUsedOverTheCap() {
+        cache.putString(url("1.json"), "0123456789");
+        cache.putString(url("2.json"), "0123456789");
+        // read last, 2.json is now the eldest
+        cache.getString(url("1.json"));
+        cache.putString(url("3.json"), "0123456789");
+        cache.putString(url("4.json"), "0123456789");
+
+        assertEquals("0123456789", cache.getString(url("1.json")));
+        assertNull(cache.getString(url("2.json")));
+        assertEquals("0123456789", cache.getString(url("4.json")));
+        assertTrue(cache.stats().startsWith("files: 3, bytes: 30"));
+    }
+
+    @Test
+    void rebuildsIndexAfterRestart() throws IOException {
+        cache.putString(url("1.json"), "0123456789");
+        cache.putString(url("2.json"), "0123456789");
+        Path leftover = Files.createFile(dir.resolve("left.tmp"));
+
+        IpfsBlobCache restarted = cache(30);
+
+        assertEquals("0123456789", restarted.getString(url("1.json")));
+        assertEquals("0123456789", restarted.getString(url("2.json")));
+        assertFalse(Files.exists(leftover));
+    }
+
+    private IpfsBlobCache cache(long maxBytes) throws IOException {
+        IpfsBlobCache cache = new IpfsBlobCache();
+        ReflectionTestUtils.setField(cache, "dir", dir.toString());
+        ReflectionTestUtils.setField(cache, "maxBytes", maxBytes);
+        cache.init();
+        return cache;
+    }
+
+    private static String url(String file) {
+        return pancakeIpfsNode + CID + "/" + file;
+    }
+}
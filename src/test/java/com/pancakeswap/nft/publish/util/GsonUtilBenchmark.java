@@ -0,0 +1,105 @@
+package com.pancakeswap.nft.publish.util;
+
+import com.google.gson.FieldNamingPolicy;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.pancakeswap.nft.publish.model.dto.AbstractTokenDto;
+import com.pancakeswap.nft.publish.model.dto.TokenDataFormattedDto;
+import com.pancakeswap.nft.publish.model.dto.TokenDataNoFormattedDto;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+// Token metadata parsing, the streaming parser against the previous one reading the body with two Gson instances.
+// mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=com.pancakeswap.nft.publish.util.GsonUtilBenchmark
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class GsonUtilBenchmark {
+
+    private static final String LIST_BODY = """
+            {
+              "name": "Pancake Squad #1",
+              "description": "PancakeSwap's first official generative NFT collection.",
+              "image": "ipfs://QmZiyFbi8QVMyhwBi7RXL5FnvsQhYHiREf7Lr6DdWXCS9a/1.png",
+              "image_png": "ipfs://QmZiyFbi8QVMyhwBi7RXL5FnvsQhYHiREf7Lr6DdWXCS9a/1-png.png",
+              "attributes": [
+                {"trait_type": "Background", "value": "Cream"},
+                {"trait_type": "Bunny", "value": "Caramel"},
+                {"trait_type": "Clothes", "value": "Hoodie Blue"},
+                {"trait_type": "Eyes", "value": "Sleepy"},
+                {"trait_type": "Hat", "value": "Bucket"},
+                {"trait_type": "Mouth", "value": "Smile"},
+                {"trait_type": "Level", "value": 3, "display_type": "number"}
+              ]
+            }""";
+    private static final String MAP_BODY = """
+            {
+              "token_id": "7",
+              "name": "Bunny",
+              "description": "Mobox avatar",
+              "image": "ipfs://QmZiyFbi8QVMyhwBi7RXL5FnvsQhYHiREf7Lr6DdWXCS9a/7.png",
+              "attributes": {"Background": "Cream", "Ears": "Long", "Eyes": "Sleepy", "Rare": true, "Speed": 1.5, "Level": 3}
+            }""";
+
+    @Param({"list", "map"})
+    private String attributes;
+
+    private String body;
+
+    @Setup
+    public void setUp() {
+        body = attributes.equals("list") ? LIST_BODY : MAP_BODY;
+    }
+
+    @Benchmark
+    public AbstractTokenDto streaming() {
+        return GsonUtil.parseBody(body);
+    }
+
+    @Benchmark
+    public AbstractTokenDto previous() {
+        return PreviousParser.parseBody(body);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(GsonUtilBenchmark.class.getSimpleName()).build()).run();
+    }
+
+    // GsonUtil.parseBody before the streaming parser
+    private static class PreviousParser {
+
+        private static final Gson gsonUnderscores = new GsonBuilder()
+                .setFieldNamingPolicy(FieldNamingPolicy.LOWER_CASE_WITH_UNDERSCORES)
+                .create();
+
+        private static final Gson gsonIdentity = new GsonBuilder()
+                .setFieldNamingPolicy(FieldNamingPolicy.IDENTITY)
+                .create();
+
+        static AbstractTokenDto parseBody(String body) {
+            AbstractTokenDto underscore;
+            AbstractTokenDto identity;
+
+            try {
+                underscore = gsonUnderscores.fromJson(body, TokenDataFormattedDto.class);
+                identity = gsonIdentity.fromJson(body, TokenDataFormattedDto.class);
+            } catch (Exception e) {
+                underscore = gsonUnderscores.fromJson(body, TokenDataNoFormattedDto.class);
+                identity = gsonIdentity.fromJson(body, TokenDataNoFormattedDto.class);
+            }
+
+            if (underscore.getImagePng() == null) {
+                underscore.setImagePng(identity.getImagePng());
+            }
+
+            return underscore;
+        }
+    }
+}
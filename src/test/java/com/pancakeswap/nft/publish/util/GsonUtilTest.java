@@ -0,0 +1,100 @@
+package com.pancakeswap.nft.publish.util;
+
+import com.google.gson.JsonSyntaxException;
+import com.pancakeswap.nft.publish.model.dto.AbstractTokenDto;
+import com.pancakeswap.nft.publish.model.dto.AttributeDto;
+import com.pancakeswap.nft.publish.model.dto.TokenDataFormattedDto;
+import com.pancakeswap.nft.publish.model.dto.TokenDataNoFormattedDto;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class GsonUtilTest {
+
+    @Test
+    void parsesListAttributes() {
+        AbstractTokenDto dto = GsonUtil.parseBody("""
+                {
+                  "name": "Pancake Squad #1",
+                  "description": "PancakeSwap's first official generative NFT collection.",
+                  "image": "ipfs://QmZiyFbi8QVMyhwBi7RXL5FnvsQhYHiREf7Lr6DdWXCS9a/1.png",
+                  "attributes": [
+                    {"trait_type": "Background", "value": "Cream"},
+                    {"trait_type": "Level", "value": 3, "display_type": "number"}
+                  ]
+                }""");
+
+        TokenDataFormattedDto formatted = assertInstanceOf(TokenDataFormattedDto.class, dto);
+        assertEquals("Pancake Squad #1", formatted.getName());
+        assertEquals("ipfs://QmZiyFbi8QVMyhwBi7RXL5FnvsQhYHiREf7Lr6DdWXCS9a/1.png", formatted.getImage());
+        assertEquals(List.of(new AttributeDto("Background", "Cream"), new AttributeDto("Level", "3")), formatted.getAttributes());
+    }
+
+    @Test
+    void parsesMapAttributes() {
+        AbstractTokenDto dto = GsonUtil.parseBody("""
+                {"token_id": "7", "name": "Bunny", "attributes": {"Ears": "Long", "Rare": true, "Speed": 1.5}}""");
+
+        TokenDataNoFormattedDto noFormatted = assertInstanceOf(TokenDataNoFormattedDto.class, dto);
+        assertEquals("7", noFormatted.getTokenId());
+        assertEquals(Map.of("Ears", "Long", "Rare", "true", "Speed", "1.5"), noFormatted.getAttributes());
+    }
+
+    @Test
+    void acceptsBothImagePngSpellings() {
+        assertEquals("a.png", GsonUtil.parseBody("{\"image_png\": \"a.png\"}").getImagePng());
+        assertEquals("b.png", GsonUtil.parseBody("{\"imagePng\": \"b.png\"}").getImagePng());
+        assertEquals("a.png", GsonUtil.parseBody("{\"imagePng\": \"b.png\", \"image_png\": \"a.png\"}").getImagePng());
+    }
+
+    @Test
+    void parsesMediaFlags() {
+        AbstractTokenDto dto = GsonUtil.parseBody("{\"is_mp4\": true, \"is_webm\": \"true\", \"is_gif\": null, \"gif\": \"g.gif\"}");
+
+        assertTrue(dto.getIsMp4());
+        assertTrue(dto.getIsWebm());
+        assertNull(dto.getIsGif());
+        assertEquals("g.gif", dto.getGif());
+    }
+
+    @Test
+    void skipsUnknownFieldsAndNullAttributes() {
+        AbstractTokenDto dto = GsonUtil.parseBody("""
+                {"external_url": "https://pancakeswap.finance", "properties": {"files": [{"uri": "x"}]},
+                 "attributes": [null, {"trait_type": "Hat", "value": null, "extra": [1, 2]}], "name": "Hat"}""");
+
+        TokenDataFormattedDto formatted = assertInstanceOf(TokenDataFormattedDto.class, dto);
+        assertEquals("Hat", formatted.getName());
+        assertEquals(List.of(new AttributeDto("Hat", null)), formatted.getAttributes());
+    }
+
+    @Test
+    void parsesMissingAttributesAsFormatted() {
+        TokenDataFormattedDto formatted = assertInstanceOf(TokenDataFormattedDto.class, GsonUtil.parseBody("{\"name\": \"a\", \"attributes\": null}"));
+
+        assertNull(formatted.getAttributes());
+    }
+
+    @Test
+    void acceptsLenientJson() {
+        AbstractTokenDto dto = GsonUtil.parseBody("{name: 'Lenient', attributes: [{trait_type: 'Eyes', value: 'Blue'},]}");
+
+        assertEquals("Lenient", dto.getName());
+        assertFalse(((TokenDataFormattedDto) dto).getAttributes().isEmpty());
+    }
+
+    @Test
+    void rejectsNonObjectBody() {
+        assertThrows(JsonSyntaxException.class, () -> GsonUtil.parseBody("[{\"name\": \"a\"}]"));
+        assertThrows(JsonSyntaxException.class, () -> GsonUtil.parseBody("<html>Gateway Timeout</html>"));
+        assertThrows(JsonSyntaxException.class, () -> GsonUtil.parseBody("{\"attributes\": \"none\"}"));
+    }
+}
@@ -0,0 +1,90 @@
+package com.pancakeswap.nft.publish.util;
+
+import org.junit.jupiter.api.Test;
+import org.web3j.abi.FunctionEncoder;
+import org.web3j.abi.datatypes.Address;
+import org.web3j.abi.datatypes.Bool;
+import org.web3j.abi.datatypes.DynamicArray;
+import org.web3j.abi.datatypes.DynamicBytes;
+import org.web3j.abi.datatypes.DynamicStruct;
+import org.web3j.abi.datatypes.Function;
+import org.web3j.utils.Numeric;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MulticallUtilTest {
+
+    private static final String COLLECTION = "0xdf7952b35f24acf7fc0487d01c8d5690a60dba07";
+    // tokenURI(1) and tokenURI(2)
+    private static final String TOKEN_URI_1 = "0xc87b56dd0000000000000000000000000000000000000000000000000000000000000001";
+    private static final String TOKEN_URI_2 = "0xc87b56dd0000000000000000000000000000000000000000000000000000000000000002";
+
+    // [(true, abi.encode(uint256(42))), (false, 0xdeadbeef)]
+    private static final String AGGREGATE3_RESPONSE = "0x" + String.join("",
+            "0000000000000000000000000000000000000000000000000000000000000020",
+            "0000000000000000000000000000000000000000000000000000000000000002",
+            "0000000000000000000000000000000000000000000000000000000000000040",
+            "00000000000000000000000000000000000000000000000000000000000000c0",
+            "0000000000000000000000000000000000000000000000000000000000000001",
+            "0000000000000000000000000000000000000000000000000000000000000040",
+            "0000000000000000000000000000000000000000000000000000000000000020",
+            "000000000000000000000000000000000000000000000000000000000000002a",
+            "0000000000000000000000000000000000000000000000000000000000000000",
+            "0000000000000000000000000000000000000000000000000000000000000040",
+            "0000000000000000000000000000000000000000000000000000000000000004",
+            "deadbeef00000000000000000000000000000000000000000000000000000000");
+
+    @Test
+    void encodesLikeWeb3jStructArray() {
+        List<MulticallUtil.Call> calls = List.of(
+                new MulticallUtil.Call(COLLECTION, true, TOKEN_URI_1),
+                new MulticallUtil.Call(COLLECTION, false, TOKEN_URI_2),
+                new MulticallUtil.Call(COLLECTION, true, "0x18160ddd"));
+
+        Function aggregate3 = new Function("aggregate3", List.of(new DynamicArray<>(DynamicStruct.class, calls.stream()
+                .map(call -> new DynamicStruct(new Address(call.target()), new Bool(call.allowFailure()),
+                        new DynamicBytes(Numeric.hexStringToByteArray(call.callData()))))
+                .toList())), List.of());
+
+        assertEquals(FunctionEncoder.encode(aggregate3), MulticallUtil.encodeAggregate3(calls));
+    }
+
+    @Test
+    void encodesSelector() {
+        String encoded = MulticallUtil.encodeAggregate3(List.of(new MulticallUtil.Call(COLLECTION, true, TOKEN_URI_1)));
+
+        assertTrue(encoded.startsWith(MulticallUtil.AGGREGATE3_SELECTOR));
+    }
+
+    @Test
+    void decodesPerCallResults() {
+        List<MulticallUtil.Result> results = MulticallUtil.decodeAggregate3(AGGREGATE3_RESPONSE);
+
+        assertEquals(2, results.size());
+        assertTrue(results.get(0).success());
+        assertEquals("0x000000000000000000000000000000000000000000000000000000000000002a", results.get(0).returnData());
+        assertFalse(results.get(1).success());
+        assertEquals("0xdeadbeef", results.get(1).returnData());
+    }
+
+    @Test
+    void decodesEmptyResult() {
+        String empty = "0x"
+                + "0000000000000000000000000000000000000000000000000000000000000020"
+                + "0000000000000000000000000000000000000000000000000000000000000000";
+
+        assertTrue(MulticallUtil.decodeAggregate3(empty).isEmpty());
+    }
+
+    @Test
+    void rejectsTruncatedResponse() {
+        String truncated = AGGREGATE3_RESPONSE.substring(0, AGGREGATE3_RESPONSE.length() - 128);
+
+        assertThrows(IllegalArgumentException.class, () -> MulticallUtil.decodeAggregate3(truncated));
+    }
+}